@@ -2,10 +2,13 @@
 // You have been warned!
 
 
-// Delete all ingested content
+// Delete all ingested content, and what was recorded about its sources
 MATCH(c:ContentElement)
 DETACH DELETE c;
 
+MATCH(s:ContentSourceState)
+DETACH DELETE s;
+
 MATCH (n)
 DETACH DELETE n;
 
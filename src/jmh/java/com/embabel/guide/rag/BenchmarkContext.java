@@ -0,0 +1,33 @@
+package com.embabel.guide.rag;
+
+import com.embabel.GuideApplication;
+import com.embabel.guide.Neo4jPropertiesInitializer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.stream.Stream;
+
+/**
+ * Starts the application with the test profile, as the integration tests do,
+ * for benchmarks that need Neo4j
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * @param properties extra properties, such as "guide.embedding.cache=false"
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        var common = Stream.of(
+                "server.port=0",
+                "spring.autoconfigure.exclude="
+                        + "org.springframework.ai.mcp.client.common.autoconfigure.McpClientAutoConfiguration");
+        return new SpringApplicationBuilder(GuideApplication.class)
+                .profiles("test")
+                .initializers(new Neo4jPropertiesInitializer())
+                .properties(Stream.concat(common, Stream.of(properties)).toArray(String[]::new))
+                .run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.rag.ingestion.HierarchicalContentReader;
+import com.embabel.agent.rag.model.NavigableDocument;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Documents loaded into memory from a fixture directory, so that benchmarks
+ * measure parsing and storage rather than disk reads
+ *
+ * @param baseUri   URI of the directory the documents were loaded from
+ * @param documents documents in path order
+ */
+record BenchmarkCorpus(String baseUri, List<Document> documents) {
+
+    /**
+     * Default checked-in corpus of HTML and Markdown pages
+     */
+    static final String DEFAULT_DIRECTORY = "src/jmh/resources/corpus";
+
+    /**
+     * @param path    path relative to the corpus directory, using forward slashes
+     * @param content raw file content
+     */
+    record Document(String path, byte[] content) {
+    }
+
+    static BenchmarkCorpus load(String directory) throws IOException {
+        var root = Path.of(directory).toAbsolutePath().normalize();
+        try (var files = DocumentFiles.walk(root)) {
+            var documents = files.sorted()
+                    .map(file -> {
+                        try {
+                            var path = root.relativize(file).toString().replace('\\', '/');
+                            return new Document(path, Files.readAllBytes(file));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toList();
+            if (documents.isEmpty()) {
+                throw new IllegalStateException("No documents found under " + root);
+            }
+            return new BenchmarkCorpus(root.toUri().toString(), documents);
+        }
+    }
+
+    /**
+     * Parse every document under its own URI
+     */
+    List<NavigableDocument> parse(HierarchicalContentReader reader) {
+        return parse(reader, "");
+    }
+
+    /**
+     * Parse every document under a URI with the given extra directory, such as "run-3/",
+     * so that repeated writes create new documents rather than replacing earlier ones
+     */
+    List<NavigableDocument> parse(HierarchicalContentReader reader, String directory) {
+        return documents.stream()
+                .map(document -> reader.parseContent(
+                        new ByteArrayInputStream(document.content()), baseUri + directory + document.path()))
+                .toList();
+    }
+}
@@ -0,0 +1,85 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.rag.ingestion.ContentChunker;
+import com.embabel.agent.rag.ingestion.HierarchicalContentReader;
+import com.embabel.agent.rag.ingestion.TikaHierarchicalContentReader;
+import com.embabel.agent.rag.model.NavigableDocument;
+import com.embabel.guide.GuideProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory ingestion stages: Tika parsing, and chunking followed by a chunk transformer chain.
+ * The chain is either the shipped default, which has no stages, or every stage.
+ * Each invocation processes the whole corpus; docs/s and chunks/s are reported as counters.
+ * Use a different corpus with -p corpus=data/docs, or one chain with -p stages=DEFAULT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IngestionBenchmark {
+
+    @Param(BenchmarkCorpus.DEFAULT_DIRECTORY)
+    public String corpus;
+
+    /**
+     * DEFAULT for the chain applied when guide.chunk-transformation is not configured, ALL for every stage
+     */
+    @Param({"DEFAULT", "ALL"})
+    public String stages;
+
+    private final HierarchicalContentReader reader = new TikaHierarchicalContentReader();
+    private BenchmarkCorpus documents;
+    private List<NavigableDocument> parsed;
+    private ContentChunker chunker;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        documents = BenchmarkCorpus.load(corpus);
+        parsed = documents.parse(reader);
+        var transformation = new GuideProperties.ChunkTransformation(
+                "ALL".equals(stages) ? Arrays.asList(GuideProperties.ChunkTransformation.Stage.values()) : List.of(),
+                8);
+        chunker = new ContentChunker(
+                new ContentChunker.Config(),
+                ChunkTransformerChain.from(transformation));
+    }
+
+    @Benchmark
+    public void parse(Throughput throughput, Blackhole blackhole) {
+        for (var document : documents.parse(reader)) {
+            blackhole.consume(document);
+            throughput.docs++;
+        }
+    }
+
+    @Benchmark
+    public void chunk(Throughput throughput, Blackhole blackhole) {
+        for (var document : parsed) {
+            for (var chunk : chunker.chunk(document)) {
+                blackhole.consume(chunk);
+                throughput.chunks++;
+            }
+            throughput.docs++;
+        }
+    }
+}
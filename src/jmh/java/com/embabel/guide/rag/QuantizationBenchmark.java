@@ -0,0 +1,204 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.DeterministicEmbeddingModel;
+import org.drivine.test.DrivineTestContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Search latency and recall of the in-process chunk vector index at each quantization level.
+ * Once the index is built, prints recall@k against an exact full-precision scan, alongside
+ * the memory taken by the vectors searched; JMH then samples search latency.
+ * <p>
+ * By default chunks are synthetic sections with deterministic embeddings. With -p source=neo4j and
+ * USE_LOCAL_NEO4J=true, the embeddings of your ingested chunks are read instead, without changing them,
+ * and chunks held out of the index serve as queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class QuantizationBenchmark {
+
+    private static final int DIMENSIONS = 1536;
+
+    private static final int QUERY_COUNT = 100;
+
+    @Param({"NONE", "INT8", "BINARY"})
+    public String quantization;
+
+    @Param({"synthetic"})
+    public String source;
+
+    @Param("10000")
+    public int chunks;
+
+    @Param("10")
+    public int topK;
+
+    @Param("64")
+    public int efSearch;
+
+    @Param("4")
+    public int rescoreFactor;
+
+    private final List<float[]> vectors = new ArrayList<>();
+    private final List<float[]> queries = new ArrayList<>();
+    private HnswIndex index;
+
+    /**
+     * Each thread steps through the queries from its own position
+     */
+    @State(Scope.Thread)
+    public static class Queries {
+        private int next;
+
+        float[] next(List<float[]> queries) {
+            return queries.get(next++ % queries.size());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void build() throws IOException {
+        switch (source) {
+            case "synthetic" -> loadSynthetic();
+            case "neo4j" -> loadStored();
+            default -> throw new IllegalArgumentException("Unknown source " + source + ": use synthetic or neo4j");
+        }
+        index = newIndex(vectors.getFirst().length);
+        var start = System.currentTimeMillis();
+        vectors.forEach(index::add);
+        System.out.printf("%s: %d chunks indexed in %d ms, %d KB of vectors in memory; recall@%d: %.3f%n",
+                quantization, vectors.size(), System.currentTimeMillis() - start, index.vectorBytes() / 1024,
+                topK, recall());
+    }
+
+    @Benchmark
+    public List<HnswIndex.Neighbor> search(Queries cursor) {
+        return index.search(cursor.next(queries), topK, ef());
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        index.close();
+    }
+
+    private HnswIndex newIndex(int dimensions) throws IOException {
+        return switch (quantization) {
+            case "NONE" -> new HnswIndex(dimensions, 16, 100, 42);
+            case "INT8" -> new HnswIndex(VectorStorage.int8(dimensions), originals(dimensions), 16, 100, 42);
+            case "BINARY" -> new HnswIndex(VectorStorage.binary(dimensions), originals(dimensions), 16, 100, 42);
+            default -> throw new IllegalArgumentException("Unknown quantization " + quantization);
+        };
+    }
+
+    private static VectorStorage originals(int dimensions) throws IOException {
+        return VectorStorage.mappedFloats(dimensions, Files.createTempFile("benchmark-vectors-", ".f32"));
+    }
+
+    private int ef() {
+        return quantization.equals("NONE") ? efSearch : Math.max(efSearch, topK * rescoreFactor);
+    }
+
+    private void loadSynthetic() {
+        var corpus = new SyntheticCorpus();
+        var model = new DeterministicEmbeddingModel(DIMENSIONS);
+        var documents = (chunks + SyntheticCorpus.SECTIONS_PER_DOCUMENT - 1) / SyntheticCorpus.SECTIONS_PER_DOCUMENT;
+        IntStream.range(0, documents)
+                .mapToObj(corpus::document)
+                // One chunk per section, as the store's chunker would make
+                .flatMap(document -> List.of(document.split("\n## ")).stream().skip(1))
+                .limit(chunks)
+                .forEach(section -> vectors.add(model.embed(section)));
+        corpus.queries(QUERY_COUNT).forEach(query -> queries.add(model.embed(query)));
+    }
+
+    /**
+     * Embeddings of ingested chunks, with a random sample held out as queries
+     */
+    private void loadStored() {
+        if (!DrivineTestContainer.useLocalNeo4j()) {
+            throw new IllegalStateException("source=neo4j reads your ingested chunks: set USE_LOCAL_NEO4J=true");
+        }
+        try (var context = BenchmarkContext.start()) {
+            var chunkEmbeddings = context.getBean(ChunkEmbeddings.class);
+            var ids = new ArrayList<>(chunkEmbeddings.versions().keySet());
+            if (ids.size() <= QUERY_COUNT) {
+                throw new IllegalStateException("Too few chunks to measure recall: load some content first");
+            }
+            Collections.shuffle(ids, new Random(42));
+            var held = ids.subList(0, QUERY_COUNT);
+            chunkEmbeddings.byIds(held).forEach(chunk -> queries.add(chunk.getEmbedding()));
+            var indexed = ids.subList(QUERY_COUNT, Math.min(ids.size(), QUERY_COUNT + chunks));
+            for (var from = 0; from < indexed.size(); from += 500) {
+                chunkEmbeddings.byIds(indexed.subList(from, Math.min(from + 500, indexed.size())))
+                        .forEach(chunk -> vectors.add(chunk.getEmbedding()));
+            }
+        }
+    }
+
+    /**
+     * Mean fraction of the exact top k found by the index
+     */
+    private double recall() {
+        var norms = vectors.stream().mapToDouble(QuantizationBenchmark::norm).toArray();
+        return queries.stream()
+                .mapToDouble(query -> {
+                    var exact = new HashSet<>(exactNearest(query, norms));
+                    var found = index.search(query, topK, ef()).stream()
+                            .filter(neighbor -> exact.contains(neighbor.node()))
+                            .count();
+                    return (double) found / exact.size();
+                })
+                .average()
+                .orElse(0);
+    }
+
+    private List<Integer> exactNearest(float[] query, double[] norms) {
+        var queryNorm = norm(query);
+        var scores = IntStream.range(0, vectors.size())
+                .mapToDouble(node -> dot(vectors.get(node), query) / (norms[node] * queryNorm))
+                .toArray();
+        return IntStream.range(0, vectors.size())
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer node) -> scores[node]).reversed())
+                .limit(topK)
+                .toList();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        var sum = 0.0;
+        for (var i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(float[] vector) {
+        return Math.sqrt(dot(vector, vector));
+    }
+}
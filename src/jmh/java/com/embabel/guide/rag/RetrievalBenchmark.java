@@ -0,0 +1,205 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.rag.ingestion.ChunkTransformer;
+import com.embabel.agent.rag.ingestion.ContentChunker;
+import com.embabel.agent.rag.ingestion.HierarchicalContentReader;
+import com.embabel.agent.rag.ingestion.TikaHierarchicalContentReader;
+import com.embabel.agent.rag.model.Chunk;
+import com.embabel.agent.rag.neo.drivine.DrivineCypherSearch;
+import com.embabel.agent.rag.neo.drivine.DrivineStore;
+import com.embabel.agent.rag.neo.drivine.NeoRagServiceProperties;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchRequest;
+import com.embabel.guide.DeterministicEmbeddingModel;
+import com.embabel.guide.GuideProperties;
+import org.drivine.manager.PersistenceManager;
+import org.drivine.query.QuerySpecification;
+import org.drivine.test.DrivineTestContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Latency of the searches behind the "docs" ToolishRag tools, as the number of chunks grows.
+ * Loads synthetic chunks with deterministic embeddings into the vector and full-text indexes,
+ * then samples search latency; JMH reports percentiles including p50 and p99.
+ * Vector search recall@k against an exact cosine scan is printed once the chunks are loaded.
+ * <p>
+ * Setup deletes all content, so this only runs against Testcontainers, never local Neo4j.
+ * Run concurrent clients with -t, for example -t 8.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class RetrievalBenchmark {
+
+    /**
+     * Matches the test profile's embedding model, for which the vector index is created
+     */
+    private static final int DIMENSIONS = 1536;
+
+    private static final int QUERY_COUNT = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int chunks;
+
+    @Param("10")
+    public int topK;
+
+    private final SyntheticCorpus corpus = new SyntheticCorpus();
+    private final HierarchicalContentReader reader = new TikaHierarchicalContentReader();
+    private ConfigurableApplicationContext context;
+    private PersistenceManager persistenceManager;
+    private TransactionTemplate transactions;
+    private DrivineStore store;
+    private List<String> queries;
+
+    /**
+     * Each thread steps through the queries from its own position
+     */
+    @State(Scope.Thread)
+    public static class Queries {
+        private int next;
+
+        String next(List<String> queries) {
+            return queries.get(next++ % queries.size());
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void load() {
+        if (DrivineTestContainer.useLocalNeo4j()) {
+            throw new IllegalStateException("RetrievalBenchmark deletes all content: unset USE_LOCAL_NEO4J to use Testcontainers");
+        }
+        context = BenchmarkContext.start();
+        persistenceManager = context.getBean("neo", PersistenceManager.class);
+        var transactionManager = context.getBean(PlatformTransactionManager.class);
+        transactions = new TransactionTemplate(transactionManager);
+        var chunkerConfig = context.getBean(GuideProperties.class).chunkerConfig();
+        store = new DrivineStore(
+                persistenceManager,
+                context.getBean(NeoRagServiceProperties.class),
+                chunkerConfig != null ? chunkerConfig : new ContentChunker.Config(),
+                context.getBean(ChunkTransformer.class),
+                DeterministicEmbeddingModel.service(DIMENSIONS),
+                transactionManager,
+                new DrivineCypherSearch(persistenceManager)
+        );
+        deleteAllContent();
+
+        var documents = (chunks + SyntheticCorpus.SECTIONS_PER_DOCUMENT - 1) / SyntheticCorpus.SECTIONS_PER_DOCUMENT;
+        IntStream.range(0, documents).parallel().forEach(n -> store.writeAndChunkDocument(reader.parseContent(
+                new ByteArrayInputStream(corpus.document(n).getBytes(StandardCharsets.UTF_8)),
+                "bench://retrieval/document-" + n + ".md")));
+        queries = corpus.queries(QUERY_COUNT);
+        System.out.printf("Loaded %d chunks; vector search recall@%d: %.3f%n",
+                store.info().getChunkCount(), topK, vectorRecall());
+    }
+
+    @Benchmark
+    public List<SimilarityResult<Chunk>> vectorSearch(Queries cursor) {
+        return store.vectorSearch(request(cursor.next(queries)), Chunk.class);
+    }
+
+    @Benchmark
+    public List<SimilarityResult<Chunk>> textSearch(Queries cursor) {
+        return store.textSearch(request(cursor.next(queries)), Chunk.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    private SimpleSimilaritySearchRequest request(String query) {
+        return new SimpleSimilaritySearchRequest(query, 0.0, topK);
+    }
+
+    /**
+     * Mean fraction of the exact top k chunks that vector search returns
+     */
+    private double vectorRecall() {
+        var model = new DeterministicEmbeddingModel(DIMENSIONS);
+        return queries.stream()
+                .mapToDouble(query -> {
+                    var found = store.vectorSearch(request(query), Chunk.class).stream()
+                            .map(result -> result.getMatch().getId())
+                            .collect(Collectors.toSet());
+                    var exact = exactNearest(model.embed(query));
+                    if (exact.isEmpty()) {
+                        return 1.0;
+                    }
+                    var hits = new HashSet<>(exact);
+                    hits.retainAll(found);
+                    return (double) hits.size() / exact.size();
+                })
+                .average()
+                .orElse(0);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private List<String> exactNearest(float[] vector) {
+        var parameter = new ArrayList<Double>(vector.length);
+        for (var component : vector) {
+            parameter.add((double) component);
+        }
+        var cypher = """
+                MATCH (c:Chunk)
+                WHERE c.embedding IS NOT NULL
+                WITH c, vector.similarity.cosine(c.embedding, $vector) AS score
+                ORDER BY score DESC
+                LIMIT $topK
+                RETURN {id: c.id}
+                """;
+        List<Map> rows = transactions.execute(status -> persistenceManager.query(
+                QuerySpecification.withStatement(cypher)
+                        .bind(Map.of("vector", parameter, "topK", topK))
+                        .transform(Map.class)));
+        return rows.stream().map(row -> (String) row.get("id")).toList();
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void deleteAllContent() {
+        var cypher = """
+                MATCH (n:ContentElement)
+                WITH n LIMIT 10000
+                DETACH DELETE n
+                RETURN {deleted: count(*)}
+                """;
+        while (true) {
+            Map row = transactions.execute(status -> persistenceManager.getOne(
+                    QuerySpecification.withStatement(cypher)
+                            .bind(Map.of())
+                            .transform(Map.class)));
+            if (((Number) row.get("deleted")).longValue() == 0) {
+                return;
+            }
+        }
+    }
+}
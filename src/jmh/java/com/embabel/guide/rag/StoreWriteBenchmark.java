@@ -0,0 +1,86 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.rag.ingestion.HierarchicalContentReader;
+import com.embabel.agent.rag.ingestion.TikaHierarchicalContentReader;
+import com.embabel.agent.rag.model.NavigableDocument;
+import com.embabel.agent.rag.neo.drivine.DrivineStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DrivineStore#writeAndChunkDocument} against Neo4j, using the test profile's
+ * stub embedding service so that results reflect chunking and database writes rather
+ * than a model provider. Neo4j runs in Testcontainers unless USE_LOCAL_NEO4J is set,
+ * in which case the benchmark writes to the local database.
+ * <p>
+ * Every invocation writes the corpus under new URIs, so each write creates documents
+ * and chunks instead of replacing those from the previous invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class StoreWriteBenchmark {
+
+    @Param(BenchmarkCorpus.DEFAULT_DIRECTORY)
+    public String corpus;
+
+    private final HierarchicalContentReader reader = new TikaHierarchicalContentReader();
+    private ConfigurableApplicationContext context;
+    private DrivineStore store;
+    private BenchmarkCorpus documents;
+    private List<NavigableDocument> pending;
+    private int chunksBefore;
+    private int run;
+
+    @Setup(Level.Trial)
+    public void startStore() throws IOException {
+        documents = BenchmarkCorpus.load(corpus);
+        // Every write should reach the embedding service and the database
+        context = BenchmarkContext.start("guide.embedding.cache=false");
+        store = context.getBean(DrivineStore.class);
+    }
+
+    // Per-invocation fixtures are safe here: each write of the corpus takes far longer than their overhead
+    @Setup(Level.Invocation)
+    public void parseCorpus() {
+        pending = documents.parse(reader, "run-" + run++ + "/");
+        chunksBefore = store.info().getChunkCount();
+    }
+
+    @Benchmark
+    public void writeAndChunk(Throughput throughput) {
+        for (var document : pending) {
+            store.writeAndChunkDocument(document);
+            throughput.docs++;
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void countChunks(Throughput throughput) {
+        throughput.chunks += store.info().getChunkCount() - chunksBefore;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStore() {
+        context.close();
+    }
+}
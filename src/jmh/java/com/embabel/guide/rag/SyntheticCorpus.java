@@ -0,0 +1,78 @@
+package com.embabel.guide.rag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible Markdown documents and queries drawn from a made-up vocabulary.
+ * Word frequencies are skewed, as in natural text, so that some words are common
+ * to many chunks and others pick out a few.
+ */
+final class SyntheticCorpus {
+
+    /**
+     * Each section is short enough to become exactly one chunk
+     */
+    static final int SECTIONS_PER_DOCUMENT = 20;
+
+    private static final int VOCABULARY_SIZE = 5000;
+    private static final int WORDS_PER_SECTION = 60;
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ren", "tus", "va", "dor", "pe", "qui", "sal",
+            "ton", "bri", "ex", "gal", "hu", "jin", "nor", "ost", "ula", "zed"
+    };
+
+    private final List<String> vocabulary;
+
+    SyntheticCorpus() {
+        var random = new Random(42);
+        vocabulary = new ArrayList<>(VOCABULARY_SIZE);
+        for (var i = 0; i < VOCABULARY_SIZE; i++) {
+            var word = new StringBuilder();
+            for (var s = 2 + random.nextInt(3); s > 0; s--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            // Suffix keeps words unique however the syllables fall
+            vocabulary.add(word.append(i).toString());
+        }
+    }
+
+    /**
+     * Markdown for document n, always the same for the same n
+     */
+    String document(int n) {
+        var random = new Random(n);
+        var markdown = new StringBuilder("# Synthetic document ").append(n).append("\n\n");
+        for (var section = 0; section < SECTIONS_PER_DOCUMENT; section++) {
+            markdown.append("## ").append(words(random, 2)).append("\n\n")
+                    .append(words(random, WORDS_PER_SECTION)).append(".\n\n");
+        }
+        return markdown.toString();
+    }
+
+    /**
+     * Short keyword queries, the same for the same count
+     */
+    List<String> queries(int count) {
+        var random = new Random(7);
+        var queries = new ArrayList<String>(count);
+        for (var i = 0; i < count; i++) {
+            queries.add(words(random, 2 + random.nextInt(3)));
+        }
+        return queries;
+    }
+
+    private String words(Random random, int count) {
+        var words = new StringBuilder();
+        for (var i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            // Squaring skews choices towards the start of the vocabulary
+            var r = random.nextDouble();
+            words.append(vocabulary.get((int) (r * r * vocabulary.size())));
+        }
+        return words.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.embabel.guide.rag;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread counters that JMH reports as rates alongside the benchmark score,
+ * giving docs/s and chunks/s
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long docs;
+    public long chunks;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        docs = 0;
+        chunks = 0;
+    }
+}
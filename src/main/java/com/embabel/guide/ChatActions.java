@@ -3,23 +3,29 @@ package com.embabel.guide;
 import com.embabel.agent.api.annotation.Action;
 import com.embabel.agent.api.annotation.EmbabelComponent;
 import com.embabel.agent.api.common.ActionContext;
+import com.embabel.agent.api.common.PromptRunner;
 import com.embabel.agent.api.identity.User;
 import com.embabel.agent.discord.DiscordUser;
-import com.embabel.agent.rag.neo.drivine.DrivineStore;
-import com.embabel.agent.rag.tools.ToolishRag;
-import com.embabel.agent.rag.tools.TryHyDE;
+import com.embabel.chat.AssistantMessage;
 import com.embabel.chat.Conversation;
 import com.embabel.chat.UserMessage;
+import com.embabel.common.textio.template.TemplateRenderer;
+import com.embabel.guide.chat.model.ResponseDeltaOutputChannelEvent;
 import com.embabel.guide.domain.DiscordUserInfoData;
 import com.embabel.guide.domain.GuideUser;
 import com.embabel.guide.domain.GuideUserData;
 import com.embabel.guide.domain.GuideUserRepository;
 import com.embabel.guide.rag.DataManager;
+import com.embabel.guide.rag.DocsSearchTools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.Nullable;
+import reactor.core.publisher.Flux;
 
 import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Actions to respond to user messages in the Guide application
@@ -30,19 +36,24 @@ public class ChatActions {
     private final DataManager dataManager;
     private final GuideUserRepository guideUserRepository;
 
-    private final Logger logger = LoggerFactory.getLogger(ChatActions.class);
+    private static final String SYSTEM_TEMPLATE = "guide_system";
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatActions.class);
     private final GuideProperties guideProperties;
-    private final DrivineStore drivineStore;
+    private final DocsSearchTools docsSearchTools;
+    private final TemplateRenderer templateRenderer;
 
     public ChatActions(
             DataManager dataManager,
             GuideUserRepository guideUserRepository,
-            DrivineStore drivineStore,
+            DocsSearchTools docsSearchTools,
+            TemplateRenderer templateRenderer,
             GuideProperties guideProperties) {
         this.dataManager = dataManager;
         this.guideUserRepository = guideUserRepository;
         this.guideProperties = guideProperties;
-        this.drivineStore = drivineStore;
+        this.docsSearchTools = docsSearchTools;
+        this.templateRenderer = templateRenderer;
     }
 
     private GuideUser getGuideUser(@Nullable User user) {
@@ -119,23 +130,74 @@ public class ChatActions {
         }
         userMap.put("customPersona", guideUser.getCore().getCustomPrompt());
         templateModel.put("user", userMap);
-        var assistantMessage = context
+        var promptRunner = context
                 .ai()
                 .withLlm(guideProperties.chatLlm())
                 .withId("chat_response")
                 .withReferences(dataManager.referencesForUser(context.user()))
                 .withToolGroups(guideProperties.toolGroups())
-                .withReference(new ToolishRag(
-                                "docs",
-                                "Embabel docs",
-                                drivineStore
-                        ).withHint(TryHyDE.usingConversationContext())
-                )
-                .withTemplate("guide_system")
+                // The docs are searched with hybrid search alone: it runs vector and full-text search,
+                // fuses and reranks, so fewer, more relevant chunks reach the prompt
+                .withToolObject(docsSearchTools.toolObject());
+        var assistantMessage = guideProperties.chat().streaming() && promptRunner.supportsStreaming()
+                ? streamResponse(promptRunner, conversation, templateModel, context)
+                : promptRunner
+                .withTemplate(SYSTEM_TEMPLATE)
                 .respondWithSystemPrompt(conversation, templateModel);
         conversation.addMessage(assistantMessage);
         context.sendMessage(assistantMessage);
     }
 
+    /**
+     * Generate the response as a stream, sending each piece through the output channel as it arrives,
+     * so that clients can show the response long before it is complete.
+     */
+    private AssistantMessage streamResponse(
+            PromptRunner promptRunner,
+            Conversation conversation,
+            Map<String, Object> templateModel,
+            ActionContext context) {
+        var processContext = context.getProcessContext();
+        var processId = processContext.getAgentProcess().getId();
+        var outputChannel = processContext.getOutputChannel();
+        return streamed(
+                promptRunner
+                        .withSystemPrompt(templateRenderer.renderLoadedTemplate(SYSTEM_TEMPLATE, templateModel))
+                        .stream()
+                        .withMessages(conversation.getMessages())
+                        .generateStream(),
+                delta -> outputChannel.send(new ResponseDeltaOutputChannelEvent(processId, delta)),
+                () -> promptRunner
+                        .withTemplate(SYSTEM_TEMPLATE)
+                        .respondWithSystemPrompt(conversation, templateModel));
+    }
+
+    /**
+     * Collect a streamed response, passing each piece to onDelta as it arrives.
+     * Falls back to a single call if the stream fails before producing anything:
+     * once clients have seen part of the response, the failure is rethrown instead.
+     */
+    static AssistantMessage streamed(
+            Flux<String> stream,
+            Consumer<String> onDelta,
+            Supplier<AssistantMessage> fallback) {
+        var content = new StringBuilder();
+        try {
+            stream
+                    .doOnNext(delta -> {
+                        content.append(delta);
+                        onDelta.accept(delta);
+                    })
+                    .blockLast();
+        } catch (RuntimeException e) {
+            if (!content.isEmpty()) {
+                throw e;
+            }
+            logger.warn("Streaming response failed, generating it in one call: {}", e.getMessage());
+            return fallback.get();
+        }
+        return new AssistantMessage(content.toString());
+    }
+
 }
 
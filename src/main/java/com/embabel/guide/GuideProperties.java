@@ -3,6 +3,9 @@ package com.embabel.guide;
 import com.embabel.agent.rag.ingestion.ContentChunker;
 import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.util.StringTransformer;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -11,6 +14,7 @@ import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.validation.annotation.Validated;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Set;
 
@@ -25,6 +29,16 @@ import java.util.Set;
  * @param referencesFile         YML files containing LLM references such as GitHub repositories and classpath info
  * @param urls                   list of URLs to ingest--for example, documentation and blogs
  * @param toolGroups             toolGroups, such as "web", that are allowed
+ * @param ingestion              concurrency limits for content ingestion
+ * @param embedding              batching and caching of embedding calls made during ingestion
+ * @param refresh                scheduled background refresh of changing content
+ * @param crawl                  limits for crawling documentation sites from a seed URL
+ * @param chunkTransformation    transformations applied to chunks before they are embedded
+ * @param markdownChunking       restructuring of Markdown documents so that chunks respect code boundaries
+ * @param deduplication          collapsing of near-duplicate chunks after ingestion
+ * @param search                 hybrid search and result caching for the docs tools
+ * @param vectorIndex            in-process replica of the chunk vector index
+ * @param chat                   delivery of chat responses
  */
 @Validated
 @ConfigurationProperties(prefix = "guide")
@@ -43,9 +57,281 @@ public record GuideProperties(
         List<String> urls,
         @DefaultValue("")
         String toolPrefix,
-        Set<String> toolGroups
+        Set<String> toolGroups,
+        @DefaultValue
+        Ingestion ingestion,
+        @DefaultValue
+        Embedding embedding,
+        @DefaultValue
+        Refresh refresh,
+        @DefaultValue
+        Crawl crawl,
+        @DefaultValue
+        ChunkTransformation chunkTransformation,
+        @DefaultValue
+        MarkdownChunking markdownChunking,
+        @DefaultValue
+        @Valid
+        Deduplication deduplication,
+        @DefaultValue
+        Search search,
+        @DefaultValue
+        VectorIndex vectorIndex,
+        @DefaultValue
+        Chat chat
 ) {
 
+    /**
+     * Concurrency limits for content ingestion.
+     * Reads (fetch and parse) and writes (chunk, embed and store) run on separate pools.
+     *
+     * @param readConcurrency  number of documents fetched and parsed at once
+     * @param writeConcurrency number of documents chunked, embedded and written at once
+     * @param maxInFlight      maximum number of documents admitted but not yet written.
+     *                         Raised, with a warning, to at least one per read and write worker.
+     * @param parseParallelism number of local files parsed at once, or 0 for one per available core
+     * @param orderedWrites    whether local files are written in the order the directory walk reached them
+     */
+    public record Ingestion(
+            @DefaultValue("8") int readConcurrency,
+            @DefaultValue("2") int writeConcurrency,
+            @DefaultValue("16") int maxInFlight,
+            @DefaultValue("0") int parseParallelism,
+            @DefaultValue("false") boolean orderedWrites
+    ) {
+    }
+
+    /**
+     * Batching of embedding calls made while writing content, and caching of query embeddings.
+     * Chunks from concurrently written documents are combined into batches
+     * bounded by both text count and estimated tokens.
+     *
+     * @param maxBatchSize      maximum number of texts per embedding call
+     * @param maxBatchTokens    maximum estimated tokens per embedding call
+     * @param linger            how long to wait for concurrent writers to fill a batch
+     * @param maxRetries        retries of a batch rejected with HTTP 429 Too Many Requests
+     * @param initialBackoff    delay before the first retry, doubling on each subsequent retry
+     * @param cache             whether to reuse stored embeddings for chunk text that has been embedded before
+     * @param maxCallsPerMinute maximum embedding calls per minute, or 0 for no limit
+     * @param queryCacheSize    number of query embeddings kept in memory, or 0 to embed every query
+     * @param cacheTtl          how long a stored embedding is kept without any chunk using it, or 0 to keep forever.
+     *                          Unused entries are pruned after each ingestion.
+     */
+    public record Embedding(
+            @DefaultValue("256") int maxBatchSize,
+            @DefaultValue("100000") int maxBatchTokens,
+            @DefaultValue("50ms") Duration linger,
+            @DefaultValue("5") int maxRetries,
+            @DefaultValue("1s") Duration initialBackoff,
+            @DefaultValue("true") boolean cache,
+            @DefaultValue("0") int maxCallsPerMinute,
+            @DefaultValue("2000") int queryCacheSize,
+            @DefaultValue("30d") Duration cacheTtl
+    ) {
+    }
+
+    /**
+     * Scheduled background refresh of content that changes, such as snapshot documentation.
+     * Each run starts after a random delay of up to {@code jitter} and reads URLs in random order.
+     *
+     * @param enabled              whether to refresh on a schedule
+     * @param interval             delay between the end of one run and the start of the next
+     * @param initialDelay         delay after startup before the first run
+     * @param jitter               maximum random delay added to the start of each run
+     * @param maxConcurrentFetches maximum number of URLs fetched at once during a refresh
+     * @param urlPatterns          a URL is refreshed if it contains any of these
+     */
+    public record Refresh(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("PT1H") Duration interval,
+            @DefaultValue("PT10M") Duration initialDelay,
+            @DefaultValue("PT5M") Duration jitter,
+            @DefaultValue("2") int maxConcurrentFetches,
+            @DefaultValue({"-SNAPSHOT", "github.com"}) List<String> urlPatterns
+    ) {
+    }
+
+    /**
+     * Limits for crawling documentation sites.
+     * Only links under the seed URL's directory are followed.
+     *
+     * @param maxDepth        maximum number of links followed from the seed
+     * @param maxPages        maximum number of pages discovered
+     * @param workers         number of pages fetched at once while discovering links
+     * @param politenessDelay minimum delay between requests to the same host
+     */
+    public record Crawl(
+            @DefaultValue("3") int maxDepth,
+            @DefaultValue("500") int maxPages,
+            @DefaultValue("4") int workers,
+            @DefaultValue("200ms") Duration politenessDelay
+    ) {
+    }
+
+    /**
+     * Transformations applied to each chunk before it is embedded.
+     * Stages that rewrite text run in the order given, then stages that add metadata.
+     *
+     * @param stages      transformations to apply. None by default, so chunks are embedded as the chunker wrote them.
+     * @param maxKeywords maximum number of keywords recorded per chunk
+     */
+    public record ChunkTransformation(
+            @DefaultValue List<Stage> stages,
+            @DefaultValue("8") int maxKeywords
+    ) {
+
+        public enum Stage {
+            /**
+             * Collapse runs of whitespace outside code blocks
+             */
+            NORMALIZE_WHITESPACE,
+            /**
+             * Prefix text with its section title.
+             * Does the same as embabel.agent.rag.content-chunker.include-section-title-in-chunk: enable only one.
+             */
+            TITLE_PREFIX,
+            /**
+             * Record whether the chunk contains code, and in which languages
+             */
+            CODE_BLOCKS,
+            /**
+             * Record the chunk's most frequent significant words
+             */
+            KEYWORDS
+        }
+    }
+
+    /**
+     * Restructuring of Markdown documents before parsing, so that no section exceeds a token budget
+     * and sections are split only between paragraphs and code blocks, or between declarations in code.
+     * Keep the budget within the chunker's maximum chunk size, at about four characters per token.
+     * Applies to every document whose path ends in .md or .markdown, whether read from a local directory,
+     * fetched by URL or crawled. Other formats are chunked by the content chunker alone.
+     *
+     * @param enabled          whether to restructure Markdown documents
+     * @param maxSectionTokens maximum estimated tokens per section
+     */
+    public record MarkdownChunking(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("400") int maxSectionTokens
+    ) {
+    }
+
+    /**
+     * Collapsing of near-duplicate chunks, compared by SimHash signature, after each ingestion run.
+     * Duplicates keep a link to the chunk they repeat but leave the vector index and search results.
+     *
+     * @param enabled        whether to collapse near-duplicates. Off by default.
+     * @param maxDistance    maximum differing signature bits, out of 64, for chunks to count as duplicates.
+     *                       At most 3, the widest distance the signature bands are guaranteed to find.
+     * @param minChunkLength chunks shorter than this many characters are never collapsed
+     */
+    public record Deduplication(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("3")
+            @Min(value = 0, message = "deduplication.maxDistance must not be negative")
+            @Max(value = 3, message = "deduplication.maxDistance must be at most 3")
+            int maxDistance,
+            @DefaultValue("200") int minChunkLength
+    ) {
+    }
+
+    /**
+     * Hybrid search, which runs vector and full-text search concurrently, fuses their rankings
+     * and reranks the best of them, and caching of docs tool results
+     *
+     * @param candidates      number of results taken from each of vector and full-text search
+     * @param topK            default number of fused results returned
+     * @param rrfK            reciprocal-rank fusion constant. Larger values weigh lower ranks more evenly.
+     * @param resultCacheSize maximum number of docs tool results cached, or 0 to disable the cache
+     * @param resultCacheTtl  how long a cached result is kept. Results are also evicted whenever content is ingested.
+     * @param reranker        how fused results are reordered before the top k are returned
+     * @param rerankDepth     number of fused results the reranker chooses from
+     */
+    public record Search(
+            @DefaultValue("20") int candidates,
+            @DefaultValue("8") int topK,
+            @DefaultValue("60") int rrfK,
+            @DefaultValue("1000") int resultCacheSize,
+            @DefaultValue("PT1H") Duration resultCacheTtl,
+            @DefaultValue("lexical") RerankerType reranker,
+            @DefaultValue("30") int rerankDepth
+    ) {
+
+        public enum RerankerType {
+            /**
+             * Keep the fused order
+             */
+            NONE,
+            /**
+             * Reorder by word overlap with the query, see {@link com.embabel.guide.rag.LexicalReranker}
+             */
+            LEXICAL
+        }
+    }
+
+    /**
+     * In-process approximate nearest-neighbour index (HNSW) replicating the chunk embeddings in Neo4j,
+     * so that the vector half of hybrid search needs no round trip to the database.
+     * Built in the background after startup and brought up to date after each ingestion;
+     * until then, searches go to Neo4j. Vectors are held off-heap, about 6 KB each at 1536 dimensions.
+     * <p>
+     * Quantization changes the replica only. Neo4j stores and searches full-precision embeddings
+     * whatever it is set to. A quantized replica builds its graph over full-precision originals in a
+     * temporary mapped file, and rescores search candidates against them. The originals come in addition
+     * to the quantized vectors, so quantization saves no memory overall: its total footprint is larger.
+     *
+     * @param enabled        whether to build and search the replica
+     * @param m              links per node in the graph. More improves recall at the cost of memory and build time.
+     * @param efConstruction candidates considered when linking a chunk into the graph
+     * @param efSearch       candidates considered per search. More improves recall at the cost of latency.
+     * @param quantization   precision of the vectors the replica's graph is searched over
+     * @param rescoreFactor  with quantization, at least topK times this many candidates are rescored at full precision
+     */
+    public record VectorIndex(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("16") int m,
+            @DefaultValue("100") int efConstruction,
+            @DefaultValue("64") int efSearch,
+            @DefaultValue("none") Quantization quantization,
+            @DefaultValue("4") int rescoreFactor
+    ) {
+
+        public enum Quantization {
+            /**
+             * Full-precision floats, 4 bytes per dimension
+             */
+            NONE,
+            /**
+             * One byte per dimension searched, plus full-precision originals in a memory-mapped file for rescoring
+             */
+            INT8,
+            /**
+             * One bit per dimension searched, plus full-precision originals in a memory-mapped file for rescoring.
+             * Loses more recall than INT8: raise rescoreFactor to compensate.
+             */
+            BINARY
+        }
+    }
+
+    /**
+     * Delivery of chat responses
+     *
+     * @param streaming          whether responses are sent to clients in pieces as the LLM generates them,
+     *                           when the LLM supports streaming. The complete message always follows.
+     * @param responseTimeout    how long to wait for the chatbot to respond before giving up on a message
+     * @param maxSessions        most chat sessions kept in memory. Evicted sessions are restored from the
+     *                           stored conversation on their next message.
+     * @param sessionIdleTimeout how long a chat session stays in memory without a message
+     */
+    public record Chat(
+            @DefaultValue("true") boolean streaming,
+            @DefaultValue("2m") Duration responseTimeout,
+            @DefaultValue("1000") int maxSessions,
+            @DefaultValue("30m") Duration sessionIdleTimeout
+    ) {
+    }
+
     public StringTransformer toolNamingStrategy() {
         return name -> toolPrefix + name;
     }
@@ -58,4 +344,5 @@ public record GuideProperties(
     public String projectRootPath() {
         return Path.of(System.getProperty("user.home"), projectsPath).toString();
     }
-}
\ No newline at end of file
+
+}
@@ -25,10 +25,11 @@ Endpoints:
 
 Tool naming:
 - docs_* tools search Embabel documentation content.
+- docs_hybridSearch runs vector and full-text search in one call and merges the results.
 - embabel_agent_* tools resolve API signatures from Embabel packages.
 
 Recommended usage for agents:
-1) Prefer docs_* tools to answer Embabel questions.
+1) Prefer docs_* tools to answer Embabel questions, starting with docs_hybridSearch.
 2) Use embabel_agent_* tools to confirm class/package signatures.
 3) If unsure, query tools list to see exact available tools.
 
@@ -0,0 +1,350 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.GuideProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process read replica of the chunk vector index, answering the vector half of hybrid search
+ * without a round trip to Neo4j. Chunk embeddings are copied into an {@link HnswIndex} in the
+ * background after startup, and again after each ingestion: only chunks added, removed or
+ * re-embedded since the last sync are read, and the graph is rebuilt once many of its nodes are deleted.
+ * <p>
+ * Until a sync has caught up with the latest ingestion the replica reports itself not ready,
+ * and callers should search Neo4j instead. Chunk text is held on the heap alongside the index,
+ * so that results need no lookup. With quantization, the graph is built over full-precision vectors
+ * in a temporary mapped file, searched over int8 or binary vectors, and candidates are rescored
+ * against the full-precision vectors.
+ */
+@Component
+public class ChunkVectorIndex {
+
+    /**
+     * A chunk similar to the query
+     *
+     * @param score cosine similarity to the query
+     */
+    public record Match(String id, String text, double score) {
+    }
+
+    /**
+     * Point-in-time state of the replica
+     *
+     * @param chunks       chunks searchable
+     * @param deleted      chunks removed but still in the graph, until it is next rebuilt
+     * @param quantization precision of the vectors searched in memory
+     * @param vectorBytes  off-heap bytes of vectors searched in memory, excluding mapped full-precision originals
+     */
+    public record Stats(
+            boolean enabled,
+            boolean ready,
+            int chunks,
+            int deleted,
+            long syncs,
+            GuideProperties.VectorIndex.Quantization quantization,
+            long vectorBytes) {
+    }
+
+    /**
+     * Chunks read from Neo4j per query while syncing
+     */
+    private static final int SYNC_BATCH_SIZE = 500;
+
+    /**
+     * Rebuild, rather than update, once this fraction of the graph would be deleted
+     */
+    private static final double REBUILD_DELETED_FRACTION = 0.25;
+
+    /**
+     * The graph and the chunk each node stands for.
+     * Changed only by the sync thread, under the write lock once published.
+     */
+    private final class Replica {
+        @Nullable
+        HnswIndex index;
+        final List<String> ids = new ArrayList<>();
+        final List<String> texts = new ArrayList<>();
+        final Map<String, Integer> nodes = new HashMap<>();
+        final Map<String, String> versions = new HashMap<>();
+
+        void add(ChunkEmbeddings.StoredChunk chunk) {
+            if (index == null) {
+                index = newIndex(chunk.getEmbedding().length);
+            }
+            var node = index.add(chunk.getEmbedding());
+            ids.add(chunk.getId());
+            texts.add(chunk.getText());
+            nodes.put(chunk.getId(), node);
+            versions.put(chunk.getId(), chunk.getVersion());
+        }
+
+        void remove(String id) {
+            versions.remove(id);
+            var node = nodes.remove(id);
+            if (node != null && index != null) {
+                index.remove(node);
+                texts.set(node, null);
+            }
+        }
+
+        int deletedCount() {
+            return index == null ? 0 : index.deletedCount();
+        }
+
+        long vectorBytes() {
+            return index == null ? 0 : index.vectorBytes();
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(ChunkVectorIndex.class);
+    private final GuideProperties.VectorIndex config;
+    private final ChunkEmbeddings chunkEmbeddings;
+    private final QueryEmbeddingCache queryEmbeddings;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private volatile long synced;
+    @Nullable
+    private volatile Replica replica;
+
+    // Building the graph is CPU-bound: one platform thread, so that syncs never overlap
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("chunk-vector-index").daemon().factory());
+
+    public ChunkVectorIndex(
+            GuideProperties guideProperties,
+            ChunkEmbeddings chunkEmbeddings,
+            QueryEmbeddingCache queryEmbeddings) {
+        this.config = guideProperties.vectorIndex();
+        this.chunkEmbeddings = chunkEmbeddings;
+        this.queryEmbeddings = queryEmbeddings;
+    }
+
+    /**
+     * Whether searches can be served locally: the replica has caught up with the latest ingestion
+     */
+    public boolean isReady() {
+        return config.enabled() && replica != null && synced == requested.get();
+    }
+
+    /**
+     * Search the replica as it stands, which may lag the latest ingestion: check {@link #isReady()} first
+     *
+     * @return up to topK chunks, most similar first
+     * @throws IllegalStateException if the replica has not been built
+     */
+    public List<Match> search(String query, int topK) {
+        if (!config.enabled() || replica == null) {
+            throw new IllegalStateException("Chunk vector index has not been built");
+        }
+        var vector = queryEmbeddings.embed(query);
+        lock.readLock().lock();
+        try {
+            // Read under the lock, as a rebuild closes the replica it replaces
+            var current = replica;
+            if (current == null || current.index == null) {
+                return List.of();
+            }
+            return current.index.search(vector, topK, ef(topK)).stream()
+                    .map(n -> new Match(current.ids.get(n.node()), current.texts.get(n.node()), n.score()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Stats stats() {
+        var current = replica;
+        if (current == null) {
+            return new Stats(config.enabled(), false, 0, 0, syncs.get(), config.quantization(), 0);
+        }
+        lock.readLock().lock();
+        try {
+            return new Stats(config.enabled(), isReady(), current.nodes.size(), current.deletedCount(), syncs.get(),
+                    config.quantization(), current.vectorBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        requestSync("startup");
+    }
+
+    @EventListener
+    public void onContentIngested(ContentIngestedEvent event) {
+        requestSync(event.source());
+    }
+
+    private void requestSync(String reason) {
+        if (!config.enabled()) {
+            return;
+        }
+        requested.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                sync(reason);
+            } catch (RuntimeException e) {
+                // Stay not ready, so that searches keep going to Neo4j until the next ingestion
+                logger.warn("Chunk vector index sync after {} failed: {}", reason, e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Bring the replica up to date with the chunks in Neo4j
+     */
+    private void sync(String reason) {
+        var target = requested.get();
+        if (synced == target) {
+            // An earlier sync already covered this request
+            return;
+        }
+        var start = System.currentTimeMillis();
+        var stored = chunkEmbeddings.versions();
+        var current = replica;
+        Set<String> removed = new HashSet<>();
+        Set<String> added = new HashSet<>(stored.keySet());
+        if (current != null) {
+            lock.readLock().lock();
+            try {
+                current.versions.forEach((id, version) -> {
+                    if (!version.equals(stored.get(id))) {
+                        // Deleted, or re-embedded under the same id: the latter is added back
+                        removed.add(id);
+                    } else {
+                        added.remove(id);
+                    }
+                });
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        if (current == null || current.index == null
+                || current.deletedCount() + removed.size()
+                > REBUILD_DELETED_FRACTION * Math.max(current.index.size(), 1)) {
+            // Build off to the side, leaving the old graph, if any, to serve until the swap
+            var rebuilt = new Replica();
+            try {
+                load(rebuilt, stored.keySet(), null);
+            } catch (RuntimeException e) {
+                close(rebuilt);
+                throw e;
+            }
+            lock.writeLock().lock();
+            try {
+                replica = rebuilt;
+                // Searches hold the read lock, so none is still using the old graph
+                if (current != null) {
+                    close(current);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("Chunk vector index built with {} chunks after {} in {} ms",
+                    stored.size(), reason, System.currentTimeMillis() - start);
+        } else {
+            lock.writeLock().lock();
+            try {
+                removed.forEach(current::remove);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            load(current, added, lock);
+            logger.info("Chunk vector index synced after {}: {} chunks added or re-embedded, {} removed in {} ms",
+                    reason, added.size(), removed.size(), System.currentTimeMillis() - start);
+        }
+        syncs.incrementAndGet();
+        synced = target;
+    }
+
+    /**
+     * Read chunks in batches and add them to the replica,
+     * taking the lock for each batch if the replica is published
+     */
+    private void load(Replica target, Set<String> ids, @Nullable ReadWriteLock publishedLock) {
+        var pending = new ArrayList<>(ids);
+        for (var from = 0; from < pending.size(); from += SYNC_BATCH_SIZE) {
+            var batch = chunkEmbeddings.byIds(pending.subList(from, Math.min(from + SYNC_BATCH_SIZE, pending.size())));
+            if (publishedLock != null) {
+                publishedLock.writeLock().lock();
+            }
+            try {
+                batch.forEach(target::add);
+            } finally {
+                if (publishedLock != null) {
+                    publishedLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private HnswIndex newIndex(int dimensions) {
+        return switch (config.quantization()) {
+            case NONE -> new HnswIndex(dimensions, config.m(), config.efConstruction(), 42);
+            case INT8 -> new HnswIndex(VectorStorage.int8(dimensions), originals(dimensions),
+                    config.m(), config.efConstruction(), 42);
+            case BINARY -> new HnswIndex(VectorStorage.binary(dimensions), originals(dimensions),
+                    config.m(), config.efConstruction(), 42);
+        };
+    }
+
+    private static VectorStorage originals(int dimensions) {
+        try {
+            return VectorStorage.mappedFloats(dimensions, Files.createTempFile("chunk-vectors-", ".f32"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Candidates searched for: with quantization, enough to find the true top k on rescoring
+     */
+    private int ef(int topK) {
+        return config.quantization() == GuideProperties.VectorIndex.Quantization.NONE
+                ? config.efSearch()
+                : Math.max(config.efSearch(), topK * config.rescoreFactor());
+    }
+
+    private static void close(Replica replica) {
+        if (replica.index != null) {
+            replica.index.close();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        var current = replica;
+        if (current != null) {
+            lock.writeLock().lock();
+            try {
+                close(current);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.embabel.guide.rag;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Restructures Markdown so that no section exceeds a token budget, splitting only
+ * between paragraphs and code blocks, and within large code blocks only at class
+ * and method boundaries. Oversized sections continue under repeated headings.
+ * The chunker then sees sections that each fit a chunk, instead of cutting code mid-method.
+ */
+public class CodeAwareMarkdownSplitter {
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*)$");
+
+    private static final Pattern FENCE = Pattern.compile("^\\s*(```|~~~)");
+
+    /**
+     * A line, with no more than one level of indentation, starting a declaration or its annotations
+     */
+    private static final Pattern DECLARATION = Pattern.compile(
+            "^( {0,4}|\\t?)(@\\w+|(public|protected|private|internal|static|final|abstract|open|override|"
+                    + "suspend|data|sealed|inline|default|synchronized)\\b|(class|interface|enum|record|object|fun|void)\\s)");
+
+    private final int maxTokens;
+
+    /**
+     * @param maxTokens maximum estimated tokens per section
+     */
+    public CodeAwareMarkdownSplitter(int maxTokens) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("maxTokens must be positive");
+        }
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Whether the URI names a Markdown document, judged by the extension of its path
+     */
+    public static boolean isMarkdown(String uri) {
+        var path = URI.create(uri).getPath();
+        return path != null && DocumentFiles.MARKDOWN_EXTENSIONS.contains(DocumentFiles.extension(path));
+    }
+
+    /**
+     * Rough token count: English text and code average about four characters per token
+     */
+    public static int estimateTokens(String text) {
+        return text.length() / 4 + 1;
+    }
+
+    public String split(String markdown) {
+        var out = new StringBuilder();
+        String heading = null;
+        var section = new ArrayList<String>();
+        for (var block : blocks(markdown)) {
+            var headingMatch = HEADING.matcher(block);
+            if (!block.contains("\n") && headingMatch.matches()) {
+                emit(out, heading, section);
+                heading = block;
+                section = new ArrayList<>();
+            } else {
+                section.add(block);
+            }
+        }
+        emit(out, heading, section);
+        return out.toString().strip() + "\n";
+    }
+
+    /**
+     * Write a section, continuing it under a repeated heading whenever it would exceed the budget
+     */
+    private void emit(StringBuilder out, String heading, List<String> blocks) {
+        var pieces = new ArrayList<String>();
+        for (var block : blocks) {
+            if (estimateTokens(block) > maxTokens && FENCE.matcher(block).find()) {
+                pieces.addAll(splitCode(block));
+            } else {
+                pieces.add(block);
+            }
+        }
+        if (heading != null) {
+            out.append(heading).append("\n\n");
+        }
+        var tokens = 0;
+        var first = true;
+        for (var piece : pieces) {
+            var cost = estimateTokens(piece);
+            if (!first && tokens + cost > maxTokens) {
+                if (heading != null) {
+                    out.append(continued(heading)).append("\n\n");
+                }
+                tokens = 0;
+            }
+            out.append(piece).append("\n\n");
+            tokens += cost;
+            first = false;
+        }
+    }
+
+    private static String continued(String heading) {
+        var matcher = HEADING.matcher(heading);
+        matcher.matches();
+        return matcher.group(1) + " " + matcher.group(2).strip() + " (continued)";
+    }
+
+    /**
+     * Split a fenced code block into several, each within budget where possible,
+     * cutting only before declarations that follow a blank line
+     */
+    private List<String> splitCode(String block) {
+        var lines = block.split("\n", -1);
+        var open = lines[0];
+        var fence = open.strip().substring(0, 3);
+        var end = lines.length - 1;
+        while (end > 0 && !lines[end].strip().startsWith(fence)) {
+            end--;
+        }
+        if (end == 0) {
+            // Unterminated fence: leave as is
+            return List.of(block);
+        }
+        var result = new ArrayList<String>();
+        var current = new StringBuilder();
+        var tokens = 0;
+        for (var i = 1; i < end; i++) {
+            var line = lines[i];
+            var atBoundary = i > 1 && lines[i - 1].isBlank() && DECLARATION.matcher(line).find();
+            if (atBoundary && tokens > 0 && tokens + estimateTokens(line) > maxTokens) {
+                result.add(open + "\n" + current.toString().stripTrailing() + "\n" + fence);
+                current.setLength(0);
+                tokens = 0;
+            }
+            current.append(line).append('\n');
+            tokens += estimateTokens(line);
+        }
+        result.add(open + "\n" + current.toString().stripTrailing() + "\n" + fence);
+        return result;
+    }
+
+    /**
+     * Headings, fenced code blocks and paragraphs, in order
+     */
+    private static List<String> blocks(String markdown) {
+        var blocks = new ArrayList<String>();
+        var current = new StringBuilder();
+        String fence = null;
+        for (var line : markdown.replace("\r\n", "\n").split("\n", -1)) {
+            var fenceMatch = FENCE.matcher(line);
+            if (fence != null) {
+                current.append(line).append('\n');
+                if (line.strip().startsWith(fence)) {
+                    fence = null;
+                    flush(blocks, current);
+                }
+            } else if (fenceMatch.find()) {
+                flush(blocks, current);
+                fence = fenceMatch.group(1);
+                current.append(line).append('\n');
+            } else if (HEADING.matcher(line).matches()) {
+                flush(blocks, current);
+                blocks.add(line.strip());
+            } else if (line.isBlank()) {
+                flush(blocks, current);
+            } else {
+                current.append(line).append('\n');
+            }
+        }
+        flush(blocks, current);
+        return blocks;
+    }
+
+    private static void flush(List<String> blocks, StringBuilder current) {
+        var block = current.toString().stripTrailing();
+        if (!block.isBlank()) {
+            blocks.add(block);
+        }
+        current.setLength(0);
+    }
+}
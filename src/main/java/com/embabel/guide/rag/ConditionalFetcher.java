@@ -0,0 +1,97 @@
+package com.embabel.guide.rag;
+
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Fetches HTTP content with conditional requests, so that unchanged content
+ * costs a single round trip with no body.
+ */
+public class ConditionalFetcher {
+
+    /**
+     * Cache validators returned with a previous response
+     *
+     * @param etag         value of the ETag header
+     * @param lastModified value of the Last-Modified header
+     */
+    public record Validators(@Nullable String etag, @Nullable String lastModified) {
+
+        public static final Validators NONE = new Validators(null, null);
+
+        public boolean isEmpty() {
+            return etag == null && lastModified == null;
+        }
+    }
+
+    /**
+     * Outcome of a fetch
+     *
+     * @param body       response body, or null if the content is not modified. Must be closed.
+     * @param validators validators to send with the next request for the same URL
+     */
+    public record Result(@Nullable InputStream body, Validators validators) {
+
+        public boolean isNotModified() {
+            return body == null;
+        }
+    }
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(TIMEOUT)
+            .build();
+
+    /**
+     * Whether the URL can be fetched conditionally
+     */
+    public static boolean supports(String url) {
+        return url.startsWith("http://") || url.startsWith("https://");
+    }
+
+    /**
+     * Fetch the URL, sending If-None-Match and If-Modified-Since from the previous validators
+     *
+     * @throws IOException if the request fails or the response is neither successful nor 304
+     */
+    public Result fetch(String url, Validators previous) throws IOException {
+        var request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(TIMEOUT)
+                .GET();
+        if (previous.etag() != null) {
+            request.header("If-None-Match", previous.etag());
+        }
+        if (previous.lastModified() != null) {
+            request.header("If-Modified-Since", previous.lastModified());
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted fetching " + url, e);
+        }
+        if (response.statusCode() == 304) {
+            response.body().close();
+            return new Result(null, previous);
+        }
+        if (response.statusCode() / 100 != 2) {
+            response.body().close();
+            throw new IOException("HTTP " + response.statusCode() + " fetching " + url);
+        }
+        var headers = response.headers();
+        var validators = new Validators(
+                headers.firstValue("ETag").orElse(null),
+                headers.firstValue("Last-Modified").orElse(null));
+        return new Result(response.body(), validators);
+    }
+}
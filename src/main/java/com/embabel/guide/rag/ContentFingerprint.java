@@ -0,0 +1,82 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.rag.model.LeafSection;
+import com.embabel.agent.rag.model.NavigableDocument;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Content hashes of a parsed document: one per leaf section, in document order,
+ * plus a digest over all of them. Comparing fingerprints tells us whether a
+ * re-read document changed, and which sections were added or removed.
+ *
+ * @param digest        hash of the section hashes, in order
+ * @param sectionHashes hash of each leaf section's title and text
+ */
+public record ContentFingerprint(String digest, List<String> sectionHashes) {
+
+    /**
+     * Sections added and removed relative to a previous fingerprint.
+     * A section whose text changed counts as one removal and one addition.
+     */
+    public record Diff(int added, int removed, int unchanged) {
+
+        public boolean isUnchanged() {
+            return added == 0 && removed == 0;
+        }
+    }
+
+    public static ContentFingerprint of(NavigableDocument root) {
+        var sections = new ArrayList<String>();
+        for (var element : root.descendants()) {
+            if (element instanceof LeafSection leaf) {
+                sections.add(leaf.getTitle() + "\n" + leaf.getText());
+            }
+        }
+        return ofSections(sections);
+    }
+
+    public static ContentFingerprint ofSections(List<String> sections) {
+        var sectionHashes = sections.stream().map(ContentFingerprint::sha256).toList();
+        return new ContentFingerprint(sha256(String.join(",", sectionHashes)), sectionHashes);
+    }
+
+    /**
+     * Compare with the fingerprint of the previously written version, if any.
+     * Content never written is always changed, even if it has no sections.
+     */
+    public Diff diff(@Nullable ContentFingerprint previous) {
+        if (previous == null) {
+            return new Diff(Math.max(1, sectionHashes.size()), 0, 0);
+        }
+        if (digest.equals(previous.digest)) {
+            return new Diff(0, 0, sectionHashes.size());
+        }
+        var before = new HashSet<>(previous.sectionHashes);
+        var after = new HashSet<>(sectionHashes);
+        var unchanged = after.stream().filter(before::contains).count();
+        var added = sectionHashes.stream().filter(h -> !before.contains(h)).count();
+        var removed = previous.sectionHashes.stream().filter(h -> !after.contains(h)).count();
+        if (added == 0 && removed == 0) {
+            // Same sections in a different order
+            added = removed = 1;
+        }
+        return new Diff((int) added, (int) removed, (int) unchanged);
+    }
+
+    private static String sha256(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
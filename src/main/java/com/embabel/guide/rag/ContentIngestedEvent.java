@@ -0,0 +1,11 @@
+package com.embabel.guide.rag;
+
+/**
+ * Published by {@link DataManager} after content has been written to the store,
+ * so that anything derived from the store's content, such as cached search results, can be discarded
+ *
+ * @param source    what was ingested, such as a URL, directory or "references"
+ * @param documents number of documents written
+ */
+public record ContentIngestedEvent(String source, int documents) {
+}
@@ -0,0 +1,87 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.GuideProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Refreshes changing content, such as snapshot documentation and GitHub pages, in the background.
+ * Each run is submitted as an ingestion job after a random delay, so that refreshes of several
+ * instances don't line up, and only one refresh is pending or running at a time.
+ * Enable with {@code guide.refresh.enabled}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "guide.refresh", name = "enabled", havingValue = "true")
+public class ContentRefreshScheduler {
+
+    private final Logger logger = LoggerFactory.getLogger(ContentRefreshScheduler.class);
+    private final DataManager dataManager;
+    private final IngestionJobService ingestionJobService;
+    private final TaskScheduler taskScheduler;
+    private final GuideProperties.Refresh refresh;
+
+    private ScheduledFuture<?> scheduled;
+    private volatile boolean pending;
+    private volatile IngestionJob lastJob;
+
+    public ContentRefreshScheduler(
+            DataManager dataManager,
+            IngestionJobService ingestionJobService,
+            TaskScheduler taskScheduler,
+            GuideProperties guideProperties) {
+        this.dataManager = dataManager;
+        this.ingestionJobService = ingestionJobService;
+        this.taskScheduler = taskScheduler;
+        this.refresh = guideProperties.refresh();
+    }
+
+    /**
+     * Schedule runs from the refresh properties: the first after the initial delay, then every interval
+     */
+    @PostConstruct
+    void start() {
+        scheduled = taskScheduler.scheduleWithFixedDelay(
+                this::scheduleRefresh, Instant.now().plus(refresh.initialDelay()), refresh.interval());
+        logger.info("Content refresh scheduled every {}, first in {}", refresh.interval(), refresh.initialDelay());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+
+    void scheduleRefresh() {
+        if (pending || (lastJob != null && !lastJob.status().isFinished())) {
+            logger.info("Previous content refresh has not finished, skipping this run");
+            return;
+        }
+        var jitterMillis = refresh.jitter().toMillis();
+        var delayMillis = jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis) : 0;
+        pending = true;
+        // Don't hold the shared scheduler thread while waiting
+        taskScheduler.schedule(this::submitRefresh, Instant.now().plusMillis(delayMillis));
+        logger.info("Content refresh will start in {} s", delayMillis / 1000);
+    }
+
+    private void submitRefresh() {
+        try {
+            lastJob = ingestionJobService.submit("Scheduled content refresh", (listener, cancelled) -> {
+                dataManager.reloadReferences();
+                return dataManager.refreshChangingContent(listener, cancelled);
+            });
+        } finally {
+            pending = false;
+        }
+    }
+}
@@ -5,18 +5,31 @@ import com.embabel.agent.api.reference.LlmReference;
 import com.embabel.agent.api.reference.LlmReferenceProviders;
 import com.embabel.agent.rag.ingestion.*;
 import com.embabel.agent.rag.ingestion.policy.UrlSpecificContentRefreshPolicy;
+import com.embabel.agent.rag.model.NavigableDocument;
 import com.embabel.agent.rag.neo.drivine.DrivineStore;
 import com.embabel.agent.tools.file.FileTools;
 import com.embabel.guide.GuideProperties;
 import com.google.common.collect.Iterables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
 
 /**
  * Exposes references and RAG configuration
@@ -30,12 +43,47 @@ public class DataManager {
             int contentElementCount) {
     }
 
+    /**
+     * Outcome and throughput of a streaming directory ingestion
+     *
+     * @param files  pipeline report, with one item per file
+     * @param bytes  bytes read from the files
+     * @param chunks chunks added to the store
+     */
+    public record DirectoryIngestionReport(
+            IngestionPipeline.Report files,
+            long bytes,
+            int chunks) {
+
+        public double filesPerSecond() {
+            return perSecond(files.written());
+        }
+
+        public double chunksPerSecond() {
+            return perSecond(chunks);
+        }
+
+        public double bytesPerSecond() {
+            return perSecond(bytes);
+        }
+
+        private double perSecond(double count) {
+            var seconds = files.elapsed().toNanos() / 1e9;
+            return seconds > 0 ? count / seconds : 0;
+        }
+    }
+
     private final Logger logger = LoggerFactory.getLogger(DataManager.class);
     private final GuideProperties guideProperties;
-    private final List<LlmReference> references;
+    private volatile List<LlmReference> references;
     private final DrivineStore store;
+    private final DrivineEmbeddingCache embeddingCache;
+    private final ContentSourceStateRepository contentSourceStates;
+    private final NearDuplicateChunks nearDuplicateChunks;
+    private final ApplicationEventPublisher eventPublisher;
 
     private final HierarchicalContentReader hierarchicalContentReader = new TikaHierarchicalContentReader();
+    private final ConditionalFetcher conditionalFetcher = new ConditionalFetcher();
 
     // Refresh only snapshots
     private final ContentRefreshPolicy contentRefreshPolicy = UrlSpecificContentRefreshPolicy.containingAny(
@@ -44,12 +92,20 @@ public class DataManager {
 
     public DataManager(
             DrivineStore store,
+            DrivineEmbeddingCache embeddingCache,
+            ContentSourceStateRepository contentSourceStates,
+            NearDuplicateChunks nearDuplicateChunks,
+            ApplicationEventPublisher eventPublisher,
             GuideProperties guideProperties
     ) {
         this.store = store;
+        this.embeddingCache = embeddingCache;
+        this.contentSourceStates = contentSourceStates;
+        this.nearDuplicateChunks = nearDuplicateChunks;
+        this.eventPublisher = eventPublisher;
         this.guideProperties = guideProperties;
         this.references = LlmReferenceProviders.fromYmlFile(guideProperties.referencesFile());
-        store.provision();
+        provisionDatabase();
         if (guideProperties.reloadContentOnStartup()) {
             logger.info("Reloading RAG content on startup");
             loadReferences();
@@ -72,12 +128,36 @@ public class DataManager {
         return referencesForAllUsers();
     }
 
+    /**
+     * Re-read LLM references, such as GitHub repositories, from the references file
+     */
+    public void reloadReferences() {
+        references = LlmReferenceProviders.fromYmlFile(guideProperties.referencesFile());
+        logger.info("Reloaded {} references from {}", references.size(), guideProperties.referencesFile());
+    }
+
     public void provisionDatabase() {
         store.provision();
+        embeddingCache.provision();
+        contentSourceStates.provision();
+        deleteOrphanedSourceStates();
     }
 
     /**
-     * Read all files under this directory on this local machine
+     * Forget fingerprints and HTTP validators of content that has been deleted,
+     * such as by wiping the database, so that it is read in full next time
+     */
+    private void deleteOrphanedSourceStates() {
+        var deleted = contentSourceStates.deleteOrphans();
+        if (deleted > 0) {
+            logger.info("Deleted the stored state of {} sources whose content no longer exists", deleted);
+        }
+    }
+
+    /**
+     * Read all files under this directory on this local machine.
+     * The whole tree is parsed before anything is written, and Markdown is not restructured
+     * by {@code guide.markdown-chunking}: prefer {@link #ingestDirectoryStreaming}.
      *
      * @param dir absolute path
      */
@@ -90,21 +170,109 @@ public class DataManager {
                     Iterables.size(root.descendants()));
             store.writeAndChunkDocument(root);
         }
+        publishIngested(dir, directoryParsingResult.getContentRoots().size());
         return directoryParsingResult;
     }
 
+    /**
+     * Read and write document files under this directory on this local machine as the walk reaches them.
+     * At most the ingestion in-flight limit of files are parsed but not yet written at once,
+     * so memory use does not grow with the size of the tree. A failure affects only the file that caused it.
+     * Files are parsed in parallel on a work-stealing pool, and written in walk order
+     * if {@code guide.ingestion.ordered-writes} is set.
+     *
+     * @param dir       absolute path
+     * @param listener  receives the stage reached by each file
+     * @param cancelled checked before admitting each file and before each stage of each file
+     */
+    public DirectoryIngestionReport ingestDirectoryStreaming(
+            String dir,
+            IngestionPipeline.Listener<String> listener,
+            BooleanSupplier cancelled) {
+        var chunksBefore = store.info().getChunkCount();
+        var bytes = new LongAdder();
+        IngestionPipeline.Report report;
+        try (var files = DocumentFiles.walk(Path.of(dir))) {
+            report = IngestionPipeline.forParsing(guideProperties.ingestion()).runStreaming(
+                    files.map(Path::toString).iterator(),
+                    file -> readFile(Path.of(file), bytes),
+                    store::writeAndChunkDocument,
+                    (file, stage, failure) -> {
+                        if (stage == IngestionPipeline.Stage.FAILED) {
+                            logger.error("❌ Failure ingesting file {}: {}",
+                                    file, failure != null ? failure.getMessage() : "unknown", failure);
+                        }
+                        listener.onStage(file, stage, failure);
+                    },
+                    cancelled);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot walk directory " + dir, e);
+        }
+        var result = new DirectoryIngestionReport(report, bytes.sum(), store.info().getChunkCount() - chunksBefore);
+        finishWrites(dir, report);
+        logger.info("Ingested {}/{} files from {} ({} failed) in {} ms: {} files/s, {} chunks/s, {} KB/s",
+                report.written(), report.total(), dir, report.failed(), report.elapsed().toMillis(),
+                String.format("%.1f", result.filesPerSecond()),
+                String.format("%.1f", result.chunksPerSecond()),
+                String.format("%.1f", result.bytesPerSecond() / 1024));
+        return result;
+    }
+
+    private NavigableDocument readFile(Path file, LongAdder bytes) {
+        try {
+            bytes.add(Files.size(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + file, e);
+        }
+        return parseUrl(file.toUri().toString());
+    }
+
+    /**
+     * Parse the document at the URL, restructuring it first if it is Markdown
+     */
+    private NavigableDocument parseUrl(String url) {
+        if (!splitsMarkdown(url)) {
+            return hierarchicalContentReader.parseUrl(url);
+        }
+        try (var content = URI.create(url).toURL().openStream()) {
+            return parseContent(content, url);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + url, e);
+        }
+    }
+
+    /**
+     * Parse downloaded content, restructuring it first if it is Markdown,
+     * so that every route Markdown enters by is chunked the same way
+     */
+    private NavigableDocument parseContent(InputStream content, String url) throws IOException {
+        if (!splitsMarkdown(url)) {
+            return hierarchicalContentReader.parseContent(content, url);
+        }
+        // The splitter works on the whole document
+        var markdown = new String(content.readAllBytes(), StandardCharsets.UTF_8);
+        var split = new CodeAwareMarkdownSplitter(guideProperties.markdownChunking().maxSectionTokens()).split(markdown);
+        return hierarchicalContentReader.parseContent(
+                new ByteArrayInputStream(split.getBytes(StandardCharsets.UTF_8)), url);
+    }
+
+    private boolean splitsMarkdown(String url) {
+        return guideProperties.markdownChunking().enabled() && CodeAwareMarkdownSplitter.isMarkdown(url);
+    }
+
     /**
      * Ingest the page at the given URL
      *
      * @param url the URL to ingest
      */
     public void ingestPage(String url) {
-        var root = contentRefreshPolicy
-                .ingestUriIfNeeded(store, hierarchicalContentReader, url);
-        if (root != null) {
+        var page = readPageIfNeeded(url, contentRefreshPolicy);
+        if (page != null) {
+            writePage(page);
+            publishIngested(url, 1);
             logger.info("Ingested page: {} with {} descendants",
-                    root.getTitle(),
-                    Iterables.size(root.descendants())
+                    page.root().getTitle(),
+                    Iterables.size(page.root().descendants())
             );
         } else {
             logger.info("Page at {} was already ingested, skipping", url);
@@ -112,26 +280,268 @@ public class DataManager {
     }
 
     /**
-     * Load all referenced URLs from configuration
+     * A page that was read and needs to be written
      */
-    public void loadReferences() {
-        int successCount = 0;
-        int failureCount = 0;
+    private record ParsedPage(
+            String url,
+            NavigableDocument root,
+            ContentFingerprint fingerprint,
+            ConditionalFetcher.Validators validators) {
+    }
 
-        for (var url : guideProperties.urls()) {
+    /**
+     * Load all referenced URLs from configuration.
+     * URLs are fetched and parsed concurrently, then chunked, embedded and written
+     * on a separate bounded stage. A failure loading one URL does not affect the others.
+     * Re-read pages whose sections are all unchanged since they were last written are skipped.
+     * Pages with any changed section are rewritten in full.
+     */
+    public IngestionPipeline.Report loadReferences() {
+        return loadReferences(IngestionPipeline.Listener.none(), () -> false);
+    }
+
+    /**
+     * Load all referenced URLs from configuration, reporting progress
+     *
+     * @param listener  receives the stage reached by each URL
+     * @param cancelled checked before each stage of each URL
+     */
+    public IngestionPipeline.Report loadReferences(
+            IngestionPipeline.Listener<String> listener,
+            BooleanSupplier cancelled) {
+        return loadUrls(
+                "references",
+                guideProperties.urls(),
+                new IngestionPipeline(guideProperties.ingestion()),
+                contentRefreshPolicy,
+                listener,
+                cancelled);
+    }
+
+    /**
+     * Refresh the configured URLs matching the refresh URL patterns, in random order,
+     * fetching no more than the refresh fetch limit at once.
+     * Pages whose content is unchanged are not rewritten.
+     *
+     * @param listener  receives the stage reached by each URL
+     * @param cancelled checked before each stage of each URL
+     */
+    public IngestionPipeline.Report refreshChangingContent(
+            IngestionPipeline.Listener<String> listener,
+            BooleanSupplier cancelled) {
+        var refresh = guideProperties.refresh();
+        var urls = new ArrayList<>(guideProperties.urls().stream()
+                .filter(url -> refresh.urlPatterns().stream().anyMatch(url::contains))
+                .toList());
+        Collections.shuffle(urls);
+        var ingestion = guideProperties.ingestion();
+        var pipeline = new IngestionPipeline(
+                Math.min(ingestion.readConcurrency(), refresh.maxConcurrentFetches()),
+                ingestion.writeConcurrency(),
+                ingestion.maxInFlight());
+        var policy = UrlSpecificContentRefreshPolicy.containingAny(refresh.urlPatterns().toArray(String[]::new));
+        return loadUrls("refresh", urls, pipeline, policy, listener, cancelled);
+    }
+
+    private IngestionPipeline.Report loadUrls(
+            String source,
+            List<String> urls,
+            IngestionPipeline pipeline,
+            ContentRefreshPolicy policy,
+            IngestionPipeline.Listener<String> listener,
+            BooleanSupplier cancelled) {
+        deleteOrphanedSourceStates();
+        var report = pipeline.run(
+                urls,
+                url -> readPageIfNeeded(url, policy),
+                this::writePage,
+                (url, stage, failure) -> {
+                    logProgress(url, stage, failure);
+                    listener.onStage(url, stage, failure);
+                },
+                cancelled
+        );
+        logger.info("Loaded {}/{} URLs successfully ({} unchanged, {} failed, {} cancelled) in {} ms",
+                report.written(), urls.size(), report.skipped(), report.failed(), report.cancelled(),
+                report.elapsed().toMillis());
+        finishWrites(source, report);
+        return report;
+    }
+
+    /**
+     * Collapse near-duplicates among newly written chunks, then announce the new content
+     */
+    private void finishWrites(String source, IngestionPipeline.Report report) {
+        if (report.written() == 0) {
+            return;
+        }
+        if (guideProperties.deduplication().enabled()) {
             try {
-                logger.info("⏳Loading URL: {}...", url);
-                ingestPage(url);
-                logger.info("✅ Loaded URL: {}", url);
-                successCount++;
-
-            } catch (Throwable t) {
-                logger.error("❌ Failure loading URL {}: {}", url, t.getMessage(), t);
-                failureCount++;
+                nearDuplicateChunks.deduplicate();
+            } catch (Exception e) {
+                // Duplicates are only wasteful, so don't fail ingestion over them
+                logger.warn("Failed to collapse near-duplicate chunks: {}", e.getMessage(), e);
             }
         }
-        logger.info("Loaded {}/{} URLs successfully ({} failed)",
-                successCount, guideProperties.urls().size(), failureCount);
+        pruneEmbeddingCache();
+        publishIngested(source, report.written());
+    }
+
+    /**
+     * Delete cached embeddings that no chunk has used for the configured time,
+     * so that the cache doesn't grow with every change to content
+     */
+    private void pruneEmbeddingCache() {
+        var embedding = guideProperties.embedding();
+        if (!embedding.cache() || embedding.cacheTtl().isZero()) {
+            return;
+        }
+        try {
+            var pruned = embeddingCache.pruneUnusedFor(embedding.cacheTtl());
+            if (pruned > 0) {
+                logger.info("Pruned {} embedding cache entries unused for {}", pruned, embedding.cacheTtl());
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to prune embedding cache: {}", e.getMessage(), e);
+        }
+    }
+
+    private void publishIngested(String source, int documents) {
+        eventPublisher.publishEvent(new ContentIngestedEvent(source, documents));
+    }
+
+    /**
+     * Crawl documentation pages under the seed URL's directory and ingest each one as it is discovered.
+     * Pages go through the same read and write stages as configured references, so pages already
+     * ingested are skipped or refreshed according to the content refresh policy.
+     * Pages are parsed from the crawler's download rather than fetched again, and the crawler holds
+     * no more downloaded pages than ingestion keeps in flight.
+     *
+     * @param seed      URL of the documentation root, such as the guide's index page
+     * @param listener  receives the stage reached by each page
+     * @param cancelled checked before admitting each page and before each stage of each page
+     */
+    public IngestionPipeline.Report crawl(
+            String seed,
+            IngestionPipeline.Listener<String> listener,
+            BooleanSupplier cancelled) {
+        deleteOrphanedSourceStates();
+        var pages = new DocsCrawler(guideProperties.crawl(), guideProperties.ingestion().maxInFlight())
+                .crawl(seed, cancelled);
+        var report = new IngestionPipeline(guideProperties.ingestion()).runStreaming(
+                pages,
+                page -> readCrawledPageIfNeeded(page, contentRefreshPolicy),
+                this::writePage,
+                (page, stage, failure) -> {
+                    logProgress(page.url(), stage, failure);
+                    listener.onStage(page.url(), stage, failure);
+                },
+                cancelled
+        );
+        logger.info("Crawled {} pages from {}: {} written, {} unchanged, {} failed, {} cancelled in {} ms",
+                report.total(), seed, report.written(), report.skipped(), report.failed(), report.cancelled(),
+                report.elapsed().toMillis());
+        finishWrites(seed, report);
+        return report;
+    }
+
+    /**
+     * Fetch and parse the page at the given URL if the refresh policy says it needs to be written
+     * and its content differs from what was last written, or what was written no longer exists.
+     * HTTP pages are fetched conditionally: if the server says the page is not modified,
+     * it is not downloaded or parsed.
+     *
+     * @return the parsed page, or null if it should not be written
+     */
+    @Nullable
+    private ParsedPage readPageIfNeeded(String url, ContentRefreshPolicy policy) {
+        if (!policy.shouldReread(store, url)) {
+            return null;
+        }
+        var validators = ConditionalFetcher.Validators.NONE;
+        NavigableDocument root;
+        if (ConditionalFetcher.supports(url)) {
+            try {
+                var fetched = conditionalFetcher.fetch(url, contentSourceStates.findValidators(url));
+                if (fetched.isNotModified()) {
+                    logger.debug("Content at {} is not modified", url);
+                    return null;
+                }
+                validators = fetched.validators();
+                try (var body = fetched.body()) {
+                    root = parseContent(body, url);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            root = parseUrl(url);
+        }
+        return parsedIfChanged(url, root, validators, policy);
+    }
+
+    /**
+     * Parse a page the crawler already downloaded
+     *
+     * @return the parsed page, or null if it should not be written
+     */
+    @Nullable
+    private ParsedPage readCrawledPageIfNeeded(DocsCrawler.Page page, ContentRefreshPolicy policy) {
+        if (!policy.shouldReread(store, page.url())) {
+            return null;
+        }
+        NavigableDocument root;
+        try {
+            root = parseContent(new ByteArrayInputStream(page.body()), page.url());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return parsedIfChanged(page.url(), root, page.validators(), policy);
+    }
+
+    @Nullable
+    private ParsedPage parsedIfChanged(
+            String url,
+            NavigableDocument root,
+            ConditionalFetcher.Validators validators,
+            ContentRefreshPolicy policy) {
+        var fingerprint = ContentFingerprint.of(root);
+        var diff = fingerprint.diff(contentSourceStates.findFingerprint(url));
+        if (diff.isUnchanged()) {
+            logger.debug("Content at {} is unchanged ({} sections)", url, diff.unchanged());
+            // Let the next fetch be answered with 304
+            contentSourceStates.saveValidators(url, validators);
+            return null;
+        }
+        if (!policy.shouldRefreshDocument(store, root)) {
+            return null;
+        }
+        logger.info("Content at {} changed ({} sections added, {} removed, {} unchanged): rewriting the document",
+                url, diff.added(), diff.removed(), diff.unchanged());
+        return new ParsedPage(url, root, fingerprint, validators);
+    }
+
+    /**
+     * Write the page, then record its fingerprint and validators so that the next refresh can skip it if unchanged.
+     * The document is rewritten as a whole, but chunks whose text is unchanged
+     * get their embeddings from the embedding cache rather than the model.
+     */
+    private void writePage(ParsedPage page) {
+        store.writeAndChunkDocument(page.root());
+        contentSourceStates.saveFingerprint(page.url(), page.fingerprint());
+        contentSourceStates.saveValidators(page.url(), page.validators());
+    }
+
+    private void logProgress(String url, IngestionPipeline.Stage stage, @Nullable Throwable failure) {
+        switch (stage) {
+            case QUEUED -> logger.debug("Queued URL: {}", url);
+            case READ -> logger.info("⏳Loading URL: {}...", url);
+            case SKIPPED -> logger.info("Page at {} was already ingested, skipping", url);
+            case WRITTEN -> logger.info("✅ Loaded URL: {}", url);
+            case FAILED -> logger.error("❌ Failure loading URL {}: {}",
+                    url, failure != null ? failure.getMessage() : "unknown", failure);
+            case CANCELLED -> logger.info("Cancelled loading URL: {}", url);
+        }
     }
 
 }
@@ -1,9 +1,20 @@
 package com.embabel.guide.rag;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 
 /**
  * Web endpoints for ingestion and content management
@@ -13,9 +24,22 @@ import org.springframework.web.bind.annotation.RestController;
 public class DataManagerController {
 
     private final DataManager dataManager;
+    private final IngestionJobService ingestionJobService;
+    private final ChunkTransformerChain chunkTransformerChain;
+    private final SearchResultCache searchResultCache;
+    private final ChunkVectorIndex chunkVectorIndex;
 
-    public DataManagerController(DataManager dataManager) {
+    public DataManagerController(
+            DataManager dataManager,
+            IngestionJobService ingestionJobService,
+            ChunkTransformerChain chunkTransformerChain,
+            SearchResultCache searchResultCache,
+            ChunkVectorIndex chunkVectorIndex) {
         this.dataManager = dataManager;
+        this.ingestionJobService = ingestionJobService;
+        this.chunkTransformerChain = chunkTransformerChain;
+        this.searchResultCache = searchResultCache;
+        this.chunkVectorIndex = chunkVectorIndex;
     }
 
     @GetMapping("/stats")
@@ -23,9 +47,91 @@ public class DataManagerController {
         return dataManager.getStats();
     }
 
+    /**
+     * Time spent in each chunk transformation stage since startup
+     */
+    @GetMapping("/stats/chunk-transformers")
+    public List<ChunkStageTiming> getChunkTransformerStats() {
+        return chunkTransformerChain.timings();
+    }
+
+    /**
+     * Hits and misses of the docs tool result cache since startup
+     */
+    @GetMapping("/stats/search-cache")
+    public SearchResultCache.Stats getSearchCacheStats() {
+        return searchResultCache.stats();
+    }
+
+    /**
+     * Size and readiness of the in-process chunk vector index
+     */
+    @GetMapping("/stats/vector-index")
+    public ChunkVectorIndex.Stats getVectorIndexStats() {
+        return chunkVectorIndex.stats();
+    }
+
+    /**
+     * Start loading all references in the background.
+     * Poll the returned job, or stream its events, to follow progress.
+     */
     @PostMapping("/load-references")
-    public String loadReferences() {
-        dataManager.loadReferences();
-        return "References loaded successfully";
+    public ResponseEntity<IngestionJob.Status> loadReferences() {
+        var job = ingestionJobService.submitLoadReferences();
+        return ResponseEntity.accepted().body(job.status());
+    }
+
+    /**
+     * Start crawling documentation under the seed URL in the background,
+     * ingesting pages as they are discovered
+     */
+    @PostMapping("/crawl")
+    public ResponseEntity<IngestionJob.Status> crawl(@RequestParam String seed) {
+        if (!ConditionalFetcher.supports(seed)) {
+            return ResponseEntity.badRequest().build();
+        }
+        var job = ingestionJobService.submitCrawl(seed);
+        return ResponseEntity.accepted().body(job.status());
+    }
+
+    /**
+     * Start ingesting the document files under a directory on the server in the background,
+     * writing each file as it is parsed
+     *
+     * @param dir absolute path of a directory on the server
+     */
+    @PostMapping("/ingest-directory")
+    public ResponseEntity<IngestionJob.Status> ingestDirectory(@RequestParam String dir) {
+        var path = Path.of(dir);
+        if (!path.isAbsolute() || !Files.isDirectory(path)) {
+            return ResponseEntity.badRequest().build();
+        }
+        var job = ingestionJobService.submitIngestDirectory(dir);
+        return ResponseEntity.accepted().body(job.status());
+    }
+
+    @GetMapping("/jobs")
+    public List<IngestionJob.Status> listJobs() {
+        return ingestionJobService.list();
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<IngestionJob.Status> getJob(@PathVariable String id) {
+        return ResponseEntity.of(ingestionJobService.find(id).map(IngestionJob::status));
+    }
+
+    @GetMapping(path = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String id) {
+        return ResponseEntity.of(ingestionJobService.find(id).map(ingestionJobService::subscribe));
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<Void> cancelJob(@PathVariable String id) {
+        if (ingestionJobService.find(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ingestionJobService.cancel(id)
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.status(HttpStatus.CONFLICT).build();
     }
 }
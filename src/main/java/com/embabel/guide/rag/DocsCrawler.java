@@ -0,0 +1,298 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.GuideProperties;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Discovers documentation pages by following links from a seed URL.
+ * Only links under the seed's path prefix are followed, each page is visited once,
+ * and requests to the same host are spaced by a politeness delay.
+ * Pages are fetched by parallel workers, breadth first, and returned as they are fetched,
+ * so that ingestion can start before the crawl finishes.
+ * Each page is downloaded once, including pages at the maximum depth whose links are not followed,
+ * and returned with its body for ingestion. Pages that cannot be fetched are skipped.
+ * At most a fixed number of downloaded pages wait for the consumer: workers block until it catches up.
+ */
+public class DocsCrawler {
+
+    /**
+     * A page found by the crawl
+     *
+     * @param url        normalized URL of the page
+     * @param body       response body
+     * @param validators validators from the response, to send when the page is next refreshed
+     */
+    public record Page(String url, byte[] body, ConditionalFetcher.Validators validators) {
+    }
+
+    private static final Set<String> SKIPPED_EXTENSIONS = Set.of(
+            "png", "jpg", "jpeg", "gif", "svg", "ico", "css", "js", "zip", "jar", "gz", "woff", "woff2", "ttf");
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private static final long HAND_OFF_POLL_MILLIS = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(DocsCrawler.class);
+    private final GuideProperties.Crawl config;
+    private final int maxBufferedPages;
+    private final HttpClient client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(TIMEOUT)
+            .build();
+
+    /**
+     * @param maxBufferedPages maximum number of downloaded pages held until the consumer takes them,
+     *                         typically the number of pages ingestion keeps in flight
+     */
+    public DocsCrawler(GuideProperties.Crawl config, int maxBufferedPages) {
+        this.config = config;
+        this.maxBufferedPages = Math.max(1, maxBufferedPages);
+    }
+
+    /**
+     * Start crawling from the seed in the background.
+     * The returned iterator yields the seed and every page fetched under its prefix,
+     * blocking until the next page is found, and ends when the crawl is complete or cancelled.
+     */
+    public Iterator<Page> crawl(String seed, BooleanSupplier cancelled) {
+        return new Crawl(normalize(URI.create(seed)), cancelled).start();
+    }
+
+    /**
+     * The directory of the URL: links must start with this to be followed
+     */
+    static String prefixOf(String url) {
+        var slash = url.lastIndexOf('/');
+        var schemeEnd = url.indexOf("://");
+        return slash > schemeEnd + 2 ? url.substring(0, slash + 1) : url + "/";
+    }
+
+    /**
+     * Absolute, normalized http(s) links in the page, honoring any base element
+     */
+    static List<String> extractLinks(String html, URI base) {
+        return extractLinks(Jsoup.parse(html, base.toString()));
+    }
+
+    /**
+     * Absolute, normalized http(s) links in the page, decoded using the charset it declares
+     */
+    static List<String> extractLinks(byte[] html, URI base) throws IOException {
+        return extractLinks(Jsoup.parse(new ByteArrayInputStream(html), null, base.toString()));
+    }
+
+    private static List<String> extractLinks(org.jsoup.nodes.Document document) {
+        var links = new ArrayList<String>();
+        for (var anchor : document.select("a[href]")) {
+            var href = anchor.absUrl("href");
+            try {
+                var link = new URI(href);
+                if ("http".equals(link.getScheme()) || "https".equals(link.getScheme())) {
+                    links.add(normalize(link));
+                }
+            } catch (URISyntaxException e) {
+                // Not a link we can follow
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Drop the fragment, so that anchors within a page don't count as separate pages
+     */
+    static String normalize(URI uri) {
+        var url = uri.toString();
+        var hash = url.indexOf('#');
+        return hash < 0 ? url : url.substring(0, hash);
+    }
+
+    private static boolean isDocument(String url) {
+        var path = URI.create(url).getPath();
+        var dot = path == null ? -1 : path.lastIndexOf('.');
+        return dot < 0 || !SKIPPED_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase());
+    }
+
+    private class Crawl {
+
+        private final String prefix;
+        private final String seed;
+        private final BooleanSupplier cancelled;
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final Map<String, Long> nextRequestAt = new ConcurrentHashMap<>();
+        private final BlockingQueue<Page> discovered = new ArrayBlockingQueue<>(maxBufferedPages);
+        private final ExecutorService workers = Executors.newFixedThreadPool(config.workers(),
+                Thread.ofPlatform().name("crawl-", 0).daemon().factory());
+
+        Crawl(String seed, BooleanSupplier cancelled) {
+            this.seed = seed;
+            this.prefix = prefixOf(seed);
+            this.cancelled = cancelled;
+        }
+
+        Iterator<Page> start() {
+            enqueue(seed, 0);
+            if (pending.get() == 0) {
+                // Nothing to follow
+                finish();
+            }
+            return new Iterator<>() {
+                private Page next;
+
+                @Override
+                public boolean hasNext() {
+                    try {
+                        while (next == null) {
+                            next = discovered.poll(HAND_OFF_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                            // Every page is handed off before the crawl finishes, so once it has
+                            // finished an empty queue means there are no more pages
+                            if (next == null && finished.get() && discovered.isEmpty()) {
+                                return false;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    return true;
+                }
+
+                @Override
+                public Page next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    var page = next;
+                    next = null;
+                    return page;
+                }
+            };
+        }
+
+        private void enqueue(String url, int depth) {
+            if (seen.size() >= config.maxPages() || !seen.add(url)) {
+                return;
+            }
+            pending.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    if (!cancelled.getAsBoolean()) {
+                        visit(url, depth);
+                    }
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        finish();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Download the page, return it, then follow its links unless it is at the maximum depth
+         */
+        private void visit(String url, int depth) {
+            var uri = URI.create(url);
+            HttpResponse<byte[]> response;
+            try {
+                awaitPoliteness(uri.getHost());
+                response = client.send(
+                        HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build(),
+                        HttpResponse.BodyHandlers.ofByteArray());
+            } catch (IOException | InterruptedException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                logger.warn("Failed to fetch {}: {}", url, e.getMessage());
+                return;
+            }
+            if (response.statusCode() / 100 != 2) {
+                logger.warn("Skipping {}: status {}", url, response.statusCode());
+                return;
+            }
+            var headers = response.headers();
+            var handedOff = handOff(new Page(url, response.body(), new ConditionalFetcher.Validators(
+                    headers.firstValue("ETag").orElse(null),
+                    headers.firstValue("Last-Modified").orElse(null))));
+            if (!handedOff || depth >= config.maxDepth()
+                    || !headers.firstValue("Content-Type").orElse("").contains("html")) {
+                return;
+            }
+            try {
+                for (var link : extractLinks(response.body(), response.uri())) {
+                    if (link.startsWith(prefix) && isDocument(link)) {
+                        enqueue(link, depth + 1);
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to follow links from {}: {}", url, e.getMessage());
+            }
+        }
+
+        /**
+         * Wait for room in the buffer, giving up if the crawl is cancelled while the consumer is not taking pages
+         *
+         * @return whether the page was handed off
+         */
+        private boolean handOff(Page page) {
+            try {
+                while (!discovered.offer(page, HAND_OFF_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.getAsBoolean()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Reserve the next request slot for the host and wait for it
+         */
+        private void awaitPoliteness(String host) throws InterruptedException {
+            var delay = config.politenessDelay().toNanos();
+            var now = System.nanoTime();
+            long slot = nextRequestAt.merge(host, now + delay, (next, ignored) -> Math.max(next, now) + delay) - delay;
+            var wait = slot - now;
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+
+        private void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            workers.shutdown();
+            logger.info("Crawl from {} found {} pages", seed, seen.size());
+        }
+    }
+}
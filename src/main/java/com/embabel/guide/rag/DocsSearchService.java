@@ -0,0 +1,222 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.rag.model.Chunk;
+import com.embabel.agent.rag.neo.drivine.DrivineStore;
+import com.embabel.common.core.types.SimilarityResult;
+import com.embabel.common.core.types.SimpleSimilaritySearchRequest;
+import com.embabel.guide.GuideProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Hybrid search over the documentation. Vector search over embabel-content-index finds
+ * passages with similar meaning, and full-text search over embabel-content-fulltext-index
+ * finds exact identifiers and error messages. Both run concurrently and their rankings
+ * are fused, so that one tool call returns the best of each. The reranker then picks
+ * the top k from a wider set of fused results, keeping the context sent to the LLM small.
+ * Vector search is answered by the in-process {@link ChunkVectorIndex} when it is ready.
+ * Near-duplicate chunks have no embedding, and are dropped from full-text results too.
+ */
+@Service
+public class DocsSearchService {
+
+    static final String HYBRID_SEARCH_DESCRIPTION = """
+            Search Embabel docs with vector and full-text search at once, fusing and reranking the results. \
+            Finds both conceptually related passages and exact matches for class names, \
+            annotations and error messages. Prefer this to calling docs_vectorSearch and \
+            docs_textSearch separately.""";
+
+    static final String TOP_K_DESCRIPTION = "Maximum number of results. Large values are capped.";
+
+    /**
+     * Arguments of the hybrid search tool
+     */
+    public record HybridSearchRequest(
+            @ToolParam(description = "What to search for: a question, concept, class name or error message")
+            String query,
+            @ToolParam(required = false, description = TOP_K_DESCRIPTION)
+            @Nullable Integer topK) {
+    }
+
+    /**
+     * A fused result
+     *
+     * @param id         id of the matching chunk
+     * @param text       text of the matching chunk
+     * @param score      reciprocal-rank fusion score
+     * @param vectorRank 1-based rank in vector search, or 0 if vector search did not return it
+     * @param textRank   1-based rank in full-text search, or 0 if full-text search did not return it
+     */
+    public record Hit(String id, String text, double score, int vectorRank, int textRank) {
+    }
+
+    private record Candidate(String id, String text) {
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(DocsSearchService.class);
+    private final DrivineStore store;
+    private final GuideProperties.Search config;
+    private final Reranker reranker;
+    private final ChunkVectorIndex vectorIndex;
+    private final NearDuplicateChunks nearDuplicateChunks;
+
+    // Both searches wait on Neo4j, and vector search on the embedding API too
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public DocsSearchService(
+            DrivineStore store,
+            GuideProperties guideProperties,
+            Reranker reranker,
+            ChunkVectorIndex vectorIndex,
+            NearDuplicateChunks nearDuplicateChunks) {
+        this.store = store;
+        this.config = guideProperties.search();
+        this.reranker = reranker;
+        this.vectorIndex = vectorIndex;
+        this.nearDuplicateChunks = nearDuplicateChunks;
+    }
+
+    /**
+     * Results of a hybrid search
+     *
+     * @param hits     results, best first
+     * @param complete false if a search or the reranker failed, so that the hits are a fallback
+     *                 that should not be cached
+     */
+    public record Hits(List<Hit> hits, boolean complete) {
+    }
+
+    /**
+     * Run both searches, fuse and rerank.
+     * If one search fails, the other's results stand alone.
+     *
+     * @throws IllegalStateException if both searches fail
+     */
+    public Hits hybridSearch(String query, int topK) {
+        var depth = Math.max(config.rerankDepth(), topK);
+        var candidateCount = Math.max(config.candidates(), depth);
+        var request = new SimpleSimilaritySearchRequest(query, 0.0, candidateCount);
+        var vector = search(() -> vectorIndex.isReady()
+                ? vectorIndex.search(query, candidateCount).stream()
+                .map(match -> new Candidate(match.id(), match.text()))
+                .toList()
+                : candidates(store.vectorSearch(request, Chunk.class)));
+        var text = search(() -> withoutDuplicates(candidates(store.textSearch(request, Chunk.class))));
+        var vectorCandidates = candidatesOrNull("Vector", query, vector);
+        var textCandidates = candidatesOrNull("Full-text", query, text);
+        if (vectorCandidates == null && textCandidates == null) {
+            var failure = new IllegalStateException(
+                    "Vector and full-text search both failed for query '" + query + "'", vector.exceptionNow());
+            failure.addSuppressed(text.exceptionNow());
+            throw failure;
+        }
+        var fused = ReciprocalRankFusion.fuse(
+                        vectorCandidates != null ? vectorCandidates : List.<Candidate>of(),
+                        textCandidates != null ? textCandidates : List.<Candidate>of(),
+                        Candidate::id,
+                        config.rrfK(),
+                        depth)
+                .stream()
+                .map(f -> new Hit(f.item().id(), f.item().text(), f.score(), f.firstRank(), f.secondRank()))
+                .toList();
+        var complete = vectorCandidates != null && textCandidates != null;
+        try {
+            return new Hits(reranker.rerank(query, fused, topK), complete);
+        } catch (RuntimeException e) {
+            // A reranker calling out, such as to an LLM, must not lose the results
+            logger.warn("Reranking failed for query '{}', keeping fused order: {}", query, e.getMessage());
+            return new Hits(Reranker.NONE.rerank(query, fused, topK), false);
+        }
+    }
+
+    /**
+     * Tool entry point, formatting results for an LLM
+     */
+    public String hybridSearchTool(HybridSearchRequest request) {
+        return hybridSearchResult(request).text();
+    }
+
+    /**
+     * Tool entry point, formatting results for an LLM and saying whether they may be cached.
+     * The requested number of results is capped at the rerank depth, so that a model
+     * asking for thousands of results doesn't widen both searches to match.
+     */
+    public SearchResultCache.Result hybridSearchResult(HybridSearchRequest request) {
+        var topK = request.topK() != null && request.topK() > 0
+                ? Math.min(request.topK(), Math.max(config.rerankDepth(), config.topK()))
+                : config.topK();
+        var result = hybridSearch(request.query(), topK);
+        var hits = result.hits();
+        if (hits.isEmpty()) {
+            return new SearchResultCache.Result("No results for: " + request.query(), result.complete());
+        }
+        var results = new StringBuilder();
+        for (var i = 0; i < hits.size(); i++) {
+            var hit = hits.get(i);
+            results.append(i + 1).append(". [chunk ").append(hit.id()).append("; ")
+                    .append(matchedBy(hit)).append("]\n")
+                    .append(hit.text()).append("\n\n");
+        }
+        return new SearchResultCache.Result(results.toString(), result.complete());
+    }
+
+    private static String matchedBy(Hit hit) {
+        if (hit.vectorRank() > 0 && hit.textRank() > 0) {
+            return "vector #" + hit.vectorRank() + ", full-text #" + hit.textRank();
+        }
+        return hit.vectorRank() > 0 ? "vector #" + hit.vectorRank() : "full-text #" + hit.textRank();
+    }
+
+    private static List<Candidate> candidates(List<SimilarityResult<Chunk>> results) {
+        return results.stream()
+                .map(result -> new Candidate(result.getMatch().getId(), result.getMatch().getText()))
+                .toList();
+    }
+
+    private List<Candidate> withoutDuplicates(List<Candidate> candidates) {
+        var duplicates = nearDuplicateChunks.duplicatesAmong(candidates.stream().map(Candidate::id).toList());
+        if (duplicates.isEmpty()) {
+            return candidates;
+        }
+        return candidates.stream()
+                .filter(candidate -> !duplicates.contains(candidate.id()))
+                .toList();
+    }
+
+    /**
+     * Run one search in the background
+     */
+    private CompletableFuture<List<Candidate>> search(Supplier<List<Candidate>> search) {
+        return CompletableFuture.supplyAsync(search, executor);
+    }
+
+    /**
+     * The search's candidates, or null if it failed, such as for a query that is not valid Lucene syntax
+     */
+    @Nullable
+    private List<Candidate> candidatesOrNull(String kind, String query, CompletableFuture<List<Candidate>> search) {
+        try {
+            return search.join();
+        } catch (CompletionException | CancellationException e) {
+            logger.warn("{} search failed for query '{}': {}", kind, query, e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,49 @@
+package com.embabel.guide.rag;
+
+import com.embabel.agent.api.common.ToolObject;
+import com.embabel.common.util.StringTransformer;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hybrid docs search as a tool object: the tool chat searches the docs with
+ */
+@Component
+public class DocsSearchTools {
+
+    /**
+     * Name of the docs reference. Its tools, and this one, are named with it as a prefix.
+     */
+    public static final String DOCS = "docs";
+
+    public static final String HYBRID_SEARCH = "hybridSearch";
+
+    /**
+     * Names tools the way the docs ToolishRag does, such as docs_vectorSearch
+     */
+    public static final StringTransformer NAMING_STRATEGY = name -> DOCS + "_" + name;
+
+    private final DocsSearchService docsSearchService;
+
+    public DocsSearchTools(DocsSearchService docsSearchService) {
+        this.docsSearchService = docsSearchService;
+    }
+
+    /**
+     * This object's tools, named consistently with the docs reference's tools
+     */
+    public ToolObject toolObject() {
+        return new ToolObject(this).withNamingStrategy(NAMING_STRATEGY);
+    }
+
+    @Tool(name = HYBRID_SEARCH, description = DocsSearchService.HYBRID_SEARCH_DESCRIPTION)
+    public String hybridSearch(
+            @ToolParam(description = "What to search for: a question, concept, class name or error message")
+            String query,
+            @ToolParam(required = false, description = DocsSearchService.TOP_K_DESCRIPTION)
+            @Nullable Integer topK) {
+        return docsSearchService.hybridSearchTool(new DocsSearchService.HybridSearchRequest(query, topK));
+    }
+}
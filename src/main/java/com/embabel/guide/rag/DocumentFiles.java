@@ -0,0 +1,197 @@
+package com.embabel.guide.rag;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds document files under a local directory
+ */
+public final class DocumentFiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentFiles.class);
+
+    /**
+     * File extensions ingested from local directories
+     */
+    public static final Set<String> EXTENSIONS = Set.of(
+            "md", "markdown", "txt", "adoc", "rst", "html", "htm", "pdf");
+
+    /**
+     * Directories never descended into
+     */
+    public static final Set<String> EXCLUDED_DIRECTORIES = Set.of(
+            ".git", ".idea", "node_modules", "target", "build");
+
+    /**
+     * Markdown formats, whose structure we can adjust before parsing
+     */
+    public static final Set<String> MARKDOWN_EXTENSIONS = Set.of("md", "markdown");
+
+    private DocumentFiles() {
+    }
+
+    /**
+     * Walk the directory tree on a background thread, returning document files as they are reached.
+     * The walk runs at most a few files ahead of the consumer. Excluded directories are not descended into,
+     * and a file or directory that cannot be read is logged and skipped without ending the walk.
+     * The stream must be closed, which stops the walk if it is not complete.
+     *
+     * @throws NotDirectoryException if the root is not a directory
+     */
+    public static Stream<Path> walk(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new NotDirectoryException(root.toString());
+        }
+        var walk = new Walk(root);
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(walk, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(walk::close);
+    }
+
+    public static boolean isDocument(Path file) {
+        return EXTENSIONS.contains(extension(file));
+    }
+
+    public static String extension(Path file) {
+        return extension(file.getFileName().toString());
+    }
+
+    /**
+     * Lower-case extension of the last segment of a file name or path, or empty if there is none
+     */
+    static String extension(String name) {
+        var dot = name.lastIndexOf('.');
+        return dot < 0 || dot < name.lastIndexOf('/') ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Hands document files from a walker thread to the consumer through a small queue
+     */
+    private static final class Walk implements Iterator<Path> {
+
+        private static final int WALK_AHEAD = 64;
+
+        // Compared by identity
+        private static final Path END = Path.of("");
+
+        private final Path root;
+        private final BlockingQueue<Path> files = new ArrayBlockingQueue<>(WALK_AHEAD);
+        private final Thread walker;
+        private volatile boolean closed;
+        private Path next;
+
+        Walk(Path root) {
+            this.root = root;
+            this.walker = Thread.ofPlatform().name("walk-" + root.getFileName()).daemon().start(this::run);
+        }
+
+        private void run() {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (closed) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return !dir.equals(root) && EXCLUDED_DIRECTORIES.contains(dir.getFileName().toString())
+                                ? FileVisitResult.SKIP_SUBTREE
+                                : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        var regular = attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file));
+                        if (regular && isDocument(file) && !handOver(file)) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        return closed ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.warn("Skipping {}, which cannot be read: {}", file, e.toString());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, @Nullable IOException e) {
+                        if (e != null) {
+                            logger.warn("Skipping the rest of {}, which cannot be read: {}", dir, e.toString());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.warn("Walk of {} ended early: {}", root, e.toString());
+            } finally {
+                handOver(END);
+            }
+        }
+
+        /**
+         * Wait for room in the queue
+         *
+         * @return false if the consumer has gone away
+         */
+        private boolean handOver(Path file) {
+            try {
+                while (!closed) {
+                    if (files.offer(file, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = files.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    next = END;
+                }
+            }
+            return next != END;
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            var file = next;
+            next = null;
+            return file;
+        }
+
+        void close() {
+            closed = true;
+            walker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.embabel.guide.rag;
+
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical navigable small world graph for approximate nearest-neighbour search by cosine similarity.
+ * Vectors are normalized on insertion and stored off-heap in a {@link VectorStorage}, so a large index
+ * adds little to garbage collection; only the graph links live on the heap.
+ * <p>
+ * Searches may run over quantized vectors, which take a fraction of the memory. Full-precision
+ * originals are then kept in a second storage, typically memory-mapped. The graph is always built
+ * at full precision, so its links are as good as an unquantized graph's. Searches use the quantized
+ * vectors to find candidates and the originals to rescore them.
+ * <p>
+ * Removal marks a node deleted: it is skipped in results but still used to navigate the graph.
+ * Rebuild the index once a large fraction of nodes is deleted.
+ * Not thread-safe: callers must not add or remove while searching.
+ */
+final class HnswIndex implements AutoCloseable {
+
+    /**
+     * A search result
+     *
+     * @param node  node number returned by {@link #add}
+     * @param score cosine similarity to the query
+     */
+    record Neighbor(int node, float score) {
+    }
+
+    private final VectorStorage vectors;
+    @Nullable
+    private final VectorStorage originals;
+    // Storage the graph is built over: the originals if there are any
+    private final VectorStorage buildVectors;
+    private final int maxLinks;
+    private final int maxLinksLayer0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    // links.get(node)[level] holds the link count followed by the linked nodes
+    private final List<int[][]> links = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int topLevel = -1;
+
+    /**
+     * Full-precision index
+     *
+     * @param dimensions     vector length
+     * @param m              links per node on upper layers; layer 0 has twice as many
+     * @param efConstruction candidate list size when linking new nodes. Larger builds a better graph, more slowly.
+     * @param seed           seed for level assignment, for reproducible graphs
+     */
+    HnswIndex(int dimensions, int m, int efConstruction, long seed) {
+        this(VectorStorage.floats(dimensions), null, m, efConstruction, seed);
+    }
+
+    /**
+     * @param vectors   storage searched for candidates, typically quantized
+     * @param originals full-precision storage to build the graph over and rescore search candidates with,
+     *                  or null to use vectors for both
+     */
+    HnswIndex(VectorStorage vectors, @Nullable VectorStorage originals, int m, int efConstruction, long seed) {
+        if (originals != null && originals.dimensions() != vectors.dimensions()) {
+            throw new IllegalArgumentException("Vector storages differ in dimensions");
+        }
+        this.vectors = vectors;
+        this.originals = originals;
+        this.buildVectors = originals != null ? originals : vectors;
+        this.maxLinks = m;
+        this.maxLinksLayer0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    int dimensions() {
+        return vectors.dimensions();
+    }
+
+    /**
+     * Bytes of vectors searched in memory, excluding any full-precision originals
+     */
+    long vectorBytes() {
+        return vectors.bytes();
+    }
+
+    /**
+     * Number of nodes, including deleted ones
+     */
+    int size() {
+        return links.size();
+    }
+
+    int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * @return the new node's number
+     */
+    int add(float[] vector) {
+        checkDimensions(vector);
+        var query = normalized(vector);
+        var node = vectors.add(query);
+        if (originals != null) {
+            originals.add(query);
+        }
+        var level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        var nodeLinks = new int[level + 1][];
+        for (var l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[(l == 0 ? maxLinksLayer0 : maxLinks) + 1];
+        }
+        links.add(nodeLinks);
+        if (entryPoint < 0) {
+            entryPoint = node;
+            topLevel = level;
+            return node;
+        }
+
+        var nearest = entryPoint;
+        for (var l = topLevel; l > level; l--) {
+            nearest = greedyClosest(buildVectors, query, nearest, l);
+        }
+        for (var l = Math.min(level, topLevel); l >= 0; l--) {
+            var candidates = searchLayer(buildVectors, query, nearest, efConstruction, l);
+            var selected = diverse(candidates, l == 0 ? maxLinksLayer0 : maxLinks);
+            for (var neighbor : selected) {
+                link(node, neighbor.node(), l);
+                link(neighbor.node(), node, l);
+            }
+            nearest = selected.getFirst().node();
+        }
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    void remove(int node) {
+        if (!deleted.get(node)) {
+            deleted.set(node);
+            deletedCount++;
+        }
+    }
+
+    boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * @param ef candidate list size. Larger finds more of the true nearest neighbours, more slowly.
+     *           With full-precision originals, every candidate found is rescored.
+     * @return up to k live nodes, most similar first
+     */
+    List<Neighbor> search(float[] vector, int k, int ef) {
+        checkDimensions(vector);
+        if (entryPoint < 0) {
+            return List.of();
+        }
+        var query = normalized(vector);
+        var nearest = entryPoint;
+        for (var l = topLevel; l > 0; l--) {
+            nearest = greedyClosest(vectors, query, nearest, l);
+        }
+        var candidates = searchLayer(vectors, query, nearest, Math.max(ef, k), 0);
+        if (originals != null) {
+            candidates = candidates.stream()
+                    .map(candidate -> new Neighbor(candidate.node(), originals.similarity(candidate.node(), query)))
+                    .toList();
+        }
+        return closest(candidates, candidates.size()).stream()
+                .filter(neighbor -> !deleted.get(neighbor.node()))
+                .limit(k)
+                .toList();
+    }
+
+    /**
+     * Release the vector storage. The index must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        vectors.close();
+        if (originals != null) {
+            originals.close();
+        }
+    }
+
+    private void checkDimensions(float[] vector) {
+        if (vector.length != dimensions()) {
+            throw new IllegalArgumentException(
+                    "Expected " + dimensions() + " dimensions but vector has " + vector.length);
+        }
+    }
+
+    private float[] normalized(float[] vector) {
+        var norm = 0.0;
+        for (var v : vector) {
+            norm += v * v;
+        }
+        var scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0f;
+        var result = new float[vector.length];
+        for (var i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * scale;
+        }
+        return result;
+    }
+
+    private int greedyClosest(VectorStorage storage, float[] query, int start, int level) {
+        var current = start;
+        var best = storage.similarity(current, query);
+        var improved = true;
+        while (improved) {
+            improved = false;
+            var nodeLinks = links.get(current)[level];
+            for (var i = 1; i <= nodeLinks[0]; i++) {
+                var score = storage.similarity(nodeLinks[i], query);
+                if (score > best) {
+                    best = score;
+                    current = nodeLinks[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer, returning up to ef of the closest nodes found, including deleted ones
+     */
+    private List<Neighbor> searchLayer(VectorStorage storage, float[] query, int start, int ef, int level) {
+        var visited = new BitSet(links.size());
+        var candidates = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::score).reversed());
+        var results = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::score));
+        var first = new Neighbor(start, storage.similarity(start, query));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+        while (!candidates.isEmpty()) {
+            var candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            var nodeLinks = links.get(candidate.node())[level];
+            for (var i = 1; i <= nodeLinks[0]; i++) {
+                var neighbor = nodeLinks[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                var score = storage.similarity(neighbor, query);
+                if (results.size() < ef || score > results.peek().score()) {
+                    var found = new Neighbor(neighbor, score);
+                    candidates.add(found);
+                    results.add(found);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    private static List<Neighbor> closest(List<Neighbor> neighbors, int count) {
+        return neighbors.stream()
+                .sorted(Comparator.comparingDouble(Neighbor::score).reversed())
+                .limit(count)
+                .toList();
+    }
+
+    /**
+     * Choose up to count neighbours, closest first, skipping any that is closer to an already chosen
+     * neighbour than to the node being linked. Links then spread across clusters rather than
+     * crowding into the nearest one, which keeps the graph navigable.
+     */
+    private List<Neighbor> diverse(List<Neighbor> candidates, int count) {
+        var chosen = new ArrayList<Neighbor>(count);
+        for (var candidate : closest(candidates, candidates.size())) {
+            if (chosen.size() == count) {
+                break;
+            }
+            var vector = buildVectors.vector(candidate.node());
+            var dominated = false;
+            for (var other : chosen) {
+                if (buildVectors.similarity(other.node(), vector) > candidate.score()) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                chosen.add(candidate);
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Link from one node to another, keeping only the closest links if the node has too many
+     */
+    private void link(int from, int to, int level) {
+        var nodeLinks = links.get(from)[level];
+        var max = nodeLinks.length - 1;
+        if (nodeLinks[0] < max) {
+            nodeLinks[++nodeLinks[0]] = to;
+            return;
+        }
+        var fromVector = buildVectors.vector(from);
+        var all = new ArrayList<Neighbor>(max + 1);
+        for (var i = 1; i <= max; i++) {
+            all.add(new Neighbor(nodeLinks[i], buildVectors.similarity(nodeLinks[i], fromVector)));
+        }
+        all.add(new Neighbor(to, buildVectors.similarity(to, fromVector)));
+        var kept = closest(all, max);
+        nodeLinks[0] = kept.size();
+        for (var i = 0; i < kept.size(); i++) {
+            nodeLinks[i + 1] = kept.get(i).node();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HnswIndex[size=" + size() + ", deleted=" + deletedCount + ", dimensions=" + dimensions()
+                + ", levels=" + (topLevel + 1) + ", m=" + maxLinks + "]";
+    }
+}
@@ -0,0 +1,176 @@
+package com.embabel.guide.rag;
+
+import org.springframework.lang.Nullable;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * An ingestion run submitted through {@link IngestionJobService}.
+ * Counts the items reaching each stage and keeps the most recent failures, so that memory
+ * does not grow with the number of items. Watchers are notified of every change.
+ */
+public class IngestionJob {
+
+    static final int MAX_RECENT_FAILURES = 50;
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+
+    /**
+     * Latest progress of one item, such as a URL
+     */
+    public record ItemProgress(
+            String item,
+            IngestionPipeline.Stage stage,
+            @Nullable String error) {
+    }
+
+    /**
+     * Point-in-time view of a job, suitable for serialization.
+     * Counts are of items that have reached each stage, so an item written counts as queued, read and written.
+     */
+    public record Status(
+            String id,
+            String description,
+            State state,
+            Instant submittedAt,
+            @Nullable Instant startedAt,
+            @Nullable Instant finishedAt,
+            Map<IngestionPipeline.Stage, Integer> counts,
+            List<ItemProgress> recentFailures,
+            @Nullable String error) {
+
+        public boolean isFinished() {
+            return state == State.COMPLETED || state == State.CANCELLED || state == State.FAILED;
+        }
+    }
+
+    private final String id;
+    private final String description;
+    private final Instant submittedAt = Instant.now();
+    private final AtomicBoolean cancelRequested = new AtomicBoolean();
+    private final Map<IngestionPipeline.Stage, Integer> counts = new EnumMap<>(IngestionPipeline.Stage.class);
+    private final Deque<ItemProgress> recentFailures = new ArrayDeque<>();
+    private final List<Consumer<Object>> watchers = new CopyOnWriteArrayList<>();
+
+    private volatile State state = State.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    IngestionJob(String id, String description) {
+        this.id = id;
+        this.description = description;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested.get();
+    }
+
+    /**
+     * Request cooperative cancellation. Items already mid-stage finish that stage.
+     *
+     * @return false if the job had already finished
+     */
+    boolean requestCancel() {
+        if (status().isFinished()) {
+            return false;
+        }
+        cancelRequested.set(true);
+        return true;
+    }
+
+    /**
+     * Pipeline listener counting per-item progress
+     */
+    IngestionPipeline.Listener<String> progressListener() {
+        return (item, stage, failure) -> {
+            var progress = new ItemProgress(item, stage, failure != null ? failure.getMessage() : null);
+            synchronized (counts) {
+                counts.merge(stage, 1, Integer::sum);
+                if (stage == IngestionPipeline.Stage.FAILED) {
+                    if (recentFailures.size() == MAX_RECENT_FAILURES) {
+                        recentFailures.removeFirst();
+                    }
+                    recentFailures.addLast(progress);
+                }
+            }
+            notifyWatchers(progress);
+        };
+    }
+
+    void started() {
+        startedAt = Instant.now();
+        transition(State.RUNNING);
+    }
+
+    void finished(IngestionPipeline.Report report) {
+        finishedAt = Instant.now();
+        transition(isCancelRequested() && report.cancelled() > 0 ? State.CANCELLED : State.COMPLETED);
+    }
+
+    void failed(Throwable t) {
+        finishedAt = Instant.now();
+        error = t.getMessage();
+        transition(State.FAILED);
+    }
+
+    void cancelledBeforeStart() {
+        finishedAt = Instant.now();
+        transition(State.CANCELLED);
+    }
+
+    /**
+     * Watch this job. The watcher receives {@link ItemProgress} for item changes
+     * and {@link Status} for job state changes.
+     */
+    void watch(Consumer<Object> watcher) {
+        watchers.add(watcher);
+    }
+
+    void unwatch(Consumer<Object> watcher) {
+        watchers.remove(watcher);
+    }
+
+    public Status status() {
+        Map<IngestionPipeline.Stage, Integer> countsSnapshot;
+        List<ItemProgress> failuresSnapshot;
+        synchronized (counts) {
+            countsSnapshot = new EnumMap<>(counts);
+            failuresSnapshot = new ArrayList<>(recentFailures);
+        }
+        return new Status(id, description, state, submittedAt, startedAt, finishedAt,
+                countsSnapshot, failuresSnapshot, error);
+    }
+
+    private void transition(State newState) {
+        state = newState;
+        notifyWatchers(status());
+    }
+
+    private void notifyWatchers(Object event) {
+        watchers.forEach(watcher -> watcher.accept(event));
+    }
+}
@@ -0,0 +1,173 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.util.UUIDv7;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs ingestion as background jobs so that callers are not held open until it completes.
+ * Jobs run one at a time on a dedicated executor, in submission order.
+ */
+@Service
+public class IngestionJobService {
+
+    /**
+     * Work performed by a job, reporting per-item progress to the listener
+     * and checking the supplier for cancellation
+     */
+    @FunctionalInterface
+    public interface Work {
+        IngestionPipeline.Report run(IngestionPipeline.Listener<String> listener, BooleanSupplier cancelled);
+    }
+
+    private static final int MAX_RETAINED_JOBS = 20;
+
+    private final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+    private final DataManager dataManager;
+    private final Map<String, IngestionJob> jobs = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("ingestion-job-", 0).factory());
+
+    public IngestionJobService(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Submit a job loading all referenced URLs from configuration
+     */
+    public IngestionJob submitLoadReferences() {
+        return submit("Load references", dataManager::loadReferences);
+    }
+
+    /**
+     * Submit a job streaming the document files under a local directory into the store
+     *
+     * @param dir absolute path
+     */
+    public IngestionJob submitIngestDirectory(String dir) {
+        return submit("Ingest directory " + dir,
+                (listener, cancelled) -> dataManager.ingestDirectoryStreaming(dir, listener, cancelled).files());
+    }
+
+    /**
+     * Submit a job crawling and ingesting documentation pages under the seed URL
+     */
+    public IngestionJob submitCrawl(String seed) {
+        return submit("Crawl " + seed, (listener, cancelled) -> dataManager.crawl(seed, listener, cancelled));
+    }
+
+    public IngestionJob submit(String description, Work work) {
+        var job = new IngestionJob(UUIDv7.INSTANCE.generateString(), description);
+        retain(job);
+        executor.execute(() -> run(job, work));
+        logger.info("Submitted ingestion job {}: {}", job.getId(), description);
+        return job;
+    }
+
+    public Optional<IngestionJob> find(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id));
+        }
+    }
+
+    /**
+     * Most recent jobs first
+     */
+    public List<IngestionJob.Status> list() {
+        List<IngestionJob> snapshot;
+        synchronized (jobs) {
+            snapshot = new ArrayList<>(jobs.values());
+        }
+        return snapshot.reversed().stream().map(IngestionJob::status).toList();
+    }
+
+    /**
+     * Request cancellation of a job
+     *
+     * @return false if there is no such job or it has already finished
+     */
+    public boolean cancel(String id) {
+        return find(id).map(IngestionJob::requestCancel).orElse(false);
+    }
+
+    /**
+     * Stream a job's progress as server-sent events.
+     * Sends the current status first, then an "item" event per item stage
+     * and a "job" event per job state change, completing when the job finishes.
+     */
+    public SseEmitter subscribe(IngestionJob job) {
+        var emitter = new SseEmitter(0L);
+        var watcher = new Consumer<Object>() {
+            @Override
+            public void accept(Object event) {
+                try {
+                    emitter.send(SseEmitter.event()
+                            .name(event instanceof IngestionJob.ItemProgress ? "item" : "job")
+                            .data(event));
+                    if (event instanceof IngestionJob.Status status && status.isFinished()) {
+                        emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away
+                    job.unwatch(this);
+                }
+            }
+        };
+        job.watch(watcher);
+        emitter.onCompletion(() -> job.unwatch(watcher));
+        emitter.onError(t -> job.unwatch(watcher));
+        watcher.accept(job.status());
+        return emitter;
+    }
+
+    private void run(IngestionJob job, Work work) {
+        if (job.isCancelRequested()) {
+            job.cancelledBeforeStart();
+            logger.info("Ingestion job {} cancelled before it started", job.getId());
+            return;
+        }
+        job.started();
+        try {
+            var report = work.run(job.progressListener(), job::isCancelRequested);
+            job.finished(report);
+            logger.info("Ingestion job {} finished as {}: {}", job.getId(), job.getState(), report);
+        } catch (Throwable t) {
+            logger.error("Ingestion job {} failed: {}", job.getId(), t.getMessage(), t);
+            job.failed(t);
+        }
+    }
+
+    private void retain(IngestionJob job) {
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            var oldest = jobs.values().iterator();
+            while (jobs.size() > MAX_RETAINED_JOBS && oldest.hasNext()) {
+                if (oldest.next().status().isFinished()) {
+                    oldest.remove();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        synchronized (jobs) {
+            jobs.values().forEach(IngestionJob::requestCancel);
+        }
+        executor.shutdownNow();
+    }
+}
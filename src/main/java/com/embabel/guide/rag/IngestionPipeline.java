@@ -0,0 +1,293 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.GuideProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Two-stage ingestion pipeline.
+ * The read stage (fetch and parse) and the write stage (chunk, embed and store)
+ * run on separate pools, each with its own concurrency limit.
+ * At most {@code maxInFlight} items may be between admission and the end of their write,
+ * so a slow write stage pushes back on reads instead of piling up parsed documents.
+ * A failure affects only the item that caused it.
+ * Cancellation is cooperative: items not yet started are cancelled, items mid-stage finish that stage.
+ * Writes run in completion order, or in admission order for parsing pipelines configured with ordered writes.
+ */
+public class IngestionPipeline {
+
+    /**
+     * Progress of a single item through the pipeline
+     */
+    public enum Stage {
+        QUEUED,
+        READ,
+        SKIPPED,
+        WRITTEN,
+        FAILED,
+        CANCELLED
+    }
+
+    /**
+     * Receives per-item progress. Called from pipeline threads, so implementations must be thread safe.
+     */
+    @FunctionalInterface
+    public interface Listener<I> {
+
+        void onStage(I item, Stage stage, @Nullable Throwable failure);
+
+        static <I> Listener<I> none() {
+            return (item, stage, failure) -> {
+            };
+        }
+    }
+
+    public record Report(
+            int total,
+            int written,
+            int skipped,
+            int failed,
+            int cancelled,
+            Duration elapsed) {
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionPipeline.class);
+
+    private final int readConcurrency;
+    private final int writeConcurrency;
+    private final int maxInFlight;
+    private final IntFunction<ExecutorService> readPoolFactory;
+    private final boolean orderedWrites;
+
+    public IngestionPipeline(GuideProperties.Ingestion config) {
+        this(config.readConcurrency(), config.writeConcurrency(), config.maxInFlight());
+    }
+
+    public IngestionPipeline(int readConcurrency, int writeConcurrency, int maxInFlight) {
+        this(readConcurrency, writeConcurrency, maxInFlight, IngestionPipeline::ioReadPool, false);
+    }
+
+    private IngestionPipeline(
+            int readConcurrency,
+            int writeConcurrency,
+            int maxInFlight,
+            IntFunction<ExecutorService> readPoolFactory,
+            boolean orderedWrites) {
+        if (readConcurrency < 1 || writeConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency limits must be positive");
+        }
+        this.readConcurrency = readConcurrency;
+        this.writeConcurrency = writeConcurrency;
+        // Fewer permits than workers would leave workers idle
+        var workers = readConcurrency + writeConcurrency;
+        if (maxInFlight < workers) {
+            logger.warn("Raising ingestion max-in-flight from {} to {}, one per read and write worker, " +
+                    "so more documents than configured may be held in memory at once", maxInFlight, workers);
+        }
+        this.maxInFlight = Math.max(maxInFlight, workers);
+        this.readPoolFactory = readPoolFactory;
+        this.orderedWrites = orderedWrites;
+    }
+
+    /**
+     * Pipeline for CPU-bound reads, such as parsing local files.
+     * Reads run on a work-stealing pool with one worker per core unless configured otherwise,
+     * and writes are optionally committed in admission order.
+     */
+    public static IngestionPipeline forParsing(GuideProperties.Ingestion config) {
+        var parallelism = config.parseParallelism() > 0
+                ? config.parseParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        return new IngestionPipeline(parallelism, config.writeConcurrency(), config.maxInFlight(),
+                IngestionPipeline::parsePool, config.orderedWrites());
+    }
+
+    /**
+     * Run all items through the pipeline, blocking until every admitted item has finished.
+     *
+     * @param items    items to ingest, admitted in iteration order
+     * @param read     read stage: returns the parsed document, or null if the item needs no write
+     * @param write    write stage
+     * @param listener progress listener
+     */
+    public <I, T> Report run(
+            Collection<? extends I> items,
+            Function<? super I, ? extends T> read,
+            Consumer<? super T> write,
+            Listener<? super I> listener) {
+        return run(items, read, write, listener, () -> false);
+    }
+
+    /**
+     * Run all items through the pipeline, blocking until every admitted item has finished
+     * or been cancelled.
+     *
+     * @param cancelled checked before each stage of each item
+     */
+    public <I, T> Report run(
+            Collection<? extends I> items,
+            Function<? super I, ? extends T> read,
+            Consumer<? super T> write,
+            Listener<? super I> listener,
+            BooleanSupplier cancelled) {
+        items.forEach(item -> listener.onStage(item, Stage.QUEUED, null));
+        var remaining = items.iterator();
+        var report = admit(remaining, read, write, listener, cancelled, false);
+        remaining.forEachRemaining(item -> listener.onStage(item, Stage.CANCELLED, null));
+        // Items never admitted because we were cancelled or interrupted
+        var notAdmitted = items.size() - report.total();
+        return new Report(items.size(), report.written(), report.skipped(), report.failed(),
+                report.cancelled() + notAdmitted, report.elapsed());
+    }
+
+    /**
+     * Run items through the pipeline as they are produced, blocking until the iterator
+     * is exhausted and every admitted item has finished or been cancelled.
+     * The iterator is advanced only when an in-flight slot is free, so a lazy source,
+     * such as a directory walk, is never read far ahead of the write stage.
+     * Items are reported as queued when admitted. After cancellation the iterator is not
+     * advanced further, and the report covers admitted items only.
+     *
+     * @param cancelled checked before admitting each item and before each stage of each item
+     */
+    public <I, T> Report runStreaming(
+            Iterator<? extends I> items,
+            Function<? super I, ? extends T> read,
+            Consumer<? super T> write,
+            Listener<? super I> listener,
+            BooleanSupplier cancelled) {
+        return admit(items, read, write, listener, cancelled, true);
+    }
+
+    private <I, T> Report admit(
+            Iterator<? extends I> items,
+            Function<? super I, ? extends T> read,
+            Consumer<? super T> write,
+            Listener<? super I> listener,
+            BooleanSupplier cancelled,
+            boolean reportQueued) {
+        var start = System.nanoTime();
+        var inFlight = new Semaphore(maxInFlight);
+        var outcomes = new EnumMap<Stage, LongAdder>(Stage.class);
+        for (var stage : Stage.values()) {
+            outcomes.put(stage, new LongAdder());
+        }
+        int admitted = 0;
+
+        // Completes once every write admitted so far has finished, when writes are ordered
+        CompletableFuture<?> writesSoFar = CompletableFuture.completedFuture(null);
+        ExecutorService readPool = readPoolFactory.apply(readConcurrency);
+        ExecutorService writePool = Executors.newFixedThreadPool(writeConcurrency,
+                Thread.ofPlatform().name("ingest-write-", 0).factory());
+        try {
+            while (!cancelled.getAsBoolean()) {
+                inFlight.acquire();
+                if (!items.hasNext()) {
+                    inFlight.release();
+                    break;
+                }
+                I item = items.next();
+                admitted++;
+                if (reportQueued) {
+                    listener.onStage(item, Stage.QUEUED, null);
+                }
+                CompletableFuture<T> readDone = CompletableFuture
+                        .supplyAsync(() -> {
+                            checkCancelled(cancelled);
+                            T document = read.apply(item);
+                            listener.onStage(item, document == null ? Stage.SKIPPED : Stage.READ, null);
+                            return document;
+                        }, readPool);
+                if (orderedWrites) {
+                    readDone = readDone.thenCombine(writesSoFar, (document, ignored) -> document);
+                }
+                var outcome = readDone
+                        .thenApplyAsync(document -> {
+                            if (document == null) {
+                                return Stage.SKIPPED;
+                            }
+                            checkCancelled(cancelled);
+                            write.accept(document);
+                            listener.onStage(item, Stage.WRITTEN, null);
+                            return Stage.WRITTEN;
+                        }, writePool)
+                        .handle((stage, t) -> {
+                            try {
+                                if (t == null) {
+                                    outcomes.get(stage).increment();
+                                    return stage;
+                                }
+                                var cause = unwrap(t);
+                                var failedStage = cause instanceof CancellationException ? Stage.CANCELLED : Stage.FAILED;
+                                outcomes.get(failedStage).increment();
+                                listener.onStage(item, failedStage, cause);
+                                return failedStage;
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                if (orderedWrites) {
+                    writesSoFar = CompletableFuture.allOf(writesSoFar, outcome);
+                }
+            }
+            // Every permit is back once all admitted items have finished
+            inFlight.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            readPool.shutdownNow();
+            writePool.shutdownNow();
+        }
+        int written = outcomes.get(Stage.WRITTEN).intValue();
+        int skipped = outcomes.get(Stage.SKIPPED).intValue();
+        int failed = outcomes.get(Stage.FAILED).intValue();
+        // Admitted items that never finished were cancelled or interrupted
+        int cancelledCount = admitted - written - skipped - failed;
+        return new Report(admitted, written, skipped, failed, cancelledCount,
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static ExecutorService ioReadPool(int concurrency) {
+        return Executors.newFixedThreadPool(concurrency, Thread.ofPlatform().name("ingest-read-", 0).factory());
+    }
+
+    private static ExecutorService parsePool(int parallelism) {
+        var workers = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            var worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("ingest-parse-" + workers.getAndIncrement());
+            return worker;
+        };
+        // FIFO mode suits independent tasks that are never joined
+        return new ForkJoinPool(parallelism, factory, null, true);
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Ingestion cancelled");
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+}
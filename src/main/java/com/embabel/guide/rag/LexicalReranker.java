@@ -0,0 +1,130 @@
+package com.embabel.guide.rag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * Cheap local reranker that scores candidates on how well their text matches the query's words.
+ * Combines BM25 over the candidate set, the fraction of query terms present, an exact phrase
+ * match and the candidate's original rank, which carries the vector search's sense of meaning.
+ * Identifiers are matched both whole and by their camel-case parts, so "PromptRunner"
+ * matches text mentioning the prompt runner.
+ */
+public class LexicalReranker implements Reranker {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern CAMEL_CASE_BOUNDARY = Pattern.compile("(?<=\\p{Ll})(?=\\p{Lu})");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how",
+            "i", "in", "is", "it", "of", "on", "or", "the", "to", "use", "what", "when", "which", "with"
+    );
+
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final double BM25_WEIGHT = 0.35;
+    private static final double COVERAGE_WEIGHT = 0.3;
+    private static final double PHRASE_WEIGHT = 0.1;
+    private static final double RANK_WEIGHT = 0.25;
+
+    @Override
+    public List<DocsSearchService.Hit> rerank(String query, List<DocsSearchService.Hit> candidates, int topK) {
+        var scores = score(query, candidates.stream().map(DocsSearchService.Hit::text).toList());
+        return IntStream.range(0, candidates.size())
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> scores[i]).reversed())
+                .limit(topK)
+                .map(candidates::get)
+                .toList();
+    }
+
+    /**
+     * Relevance of each text to the query, between 0 and 1
+     *
+     * @param texts candidate texts in their original order, best first
+     */
+    double[] score(String query, List<String> texts) {
+        var queryTerms = new LinkedHashSet<>(terms(query));
+        queryTerms.removeAll(STOP_WORDS);
+        var documents = texts.stream().map(LexicalReranker::termCounts).toList();
+        var averageLength = documents.stream().mapToInt(TermCounts::length).average().orElse(1);
+        var documentFrequency = new HashMap<String, Integer>();
+        for (var term : queryTerms) {
+            documentFrequency.put(term, (int) documents.stream().filter(d -> d.counts().containsKey(term)).count());
+        }
+
+        var bm25 = new double[texts.size()];
+        var maxBm25 = 0.0;
+        for (var i = 0; i < texts.size(); i++) {
+            var document = documents.get(i);
+            for (var term : queryTerms) {
+                var frequency = document.counts().getOrDefault(term, 0);
+                if (frequency == 0) {
+                    continue;
+                }
+                var df = documentFrequency.get(term);
+                var idf = Math.log(1 + (texts.size() - df + 0.5) / (df + 0.5));
+                bm25[i] += idf * frequency * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * document.length() / averageLength));
+            }
+            maxBm25 = Math.max(maxBm25, bm25[i]);
+        }
+
+        var phrase = WHITESPACE.matcher(query.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+        var scores = new double[texts.size()];
+        for (var i = 0; i < texts.size(); i++) {
+            var document = documents.get(i);
+            var coverage = queryTerms.isEmpty()
+                    ? 0
+                    : (double) queryTerms.stream().filter(document.counts()::containsKey).count() / queryTerms.size();
+            var phraseMatch = !phrase.isEmpty()
+                    && WHITESPACE.matcher(texts.get(i).toLowerCase(Locale.ROOT)).replaceAll(" ").contains(phrase);
+            scores[i] = BM25_WEIGHT * (maxBm25 > 0 ? bm25[i] / maxBm25 : 0)
+                    + COVERAGE_WEIGHT * coverage
+                    + PHRASE_WEIGHT * (phraseMatch ? 1 : 0)
+                    + RANK_WEIGHT / (1 + i);
+        }
+        return scores;
+    }
+
+    private record TermCounts(Map<String, Integer> counts, int length) {
+    }
+
+    private static TermCounts termCounts(String text) {
+        var terms = terms(text);
+        var counts = new HashMap<String, Integer>();
+        terms.forEach(term -> counts.merge(term, 1, Integer::sum));
+        return new TermCounts(counts, terms.size());
+    }
+
+    /**
+     * Lowercase words, with camel-case identifiers also split into their parts
+     */
+    static List<String> terms(String text) {
+        var terms = new ArrayList<String>();
+        for (var word : NON_WORD.split(text)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            terms.add(word.toLowerCase(Locale.ROOT));
+            var parts = CAMEL_CASE_BOUNDARY.split(word);
+            if (parts.length > 1) {
+                for (var part : parts) {
+                    terms.add(part.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return terms;
+    }
+}
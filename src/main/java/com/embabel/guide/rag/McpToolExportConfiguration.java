@@ -4,6 +4,8 @@ import com.embabel.agent.mcpserver.McpToolExport;
 import com.embabel.agent.rag.neo.drivine.DrivineStore;
 import com.embabel.agent.rag.tools.ToolishRag;
 import com.embabel.guide.GuideProperties;
+import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.ai.tool.function.FunctionToolCallback;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -13,20 +15,52 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 class McpToolExportConfiguration {
 
+    /**
+     * The docs_* search tools, with results cached so that repeated questions
+     * from MCP clients are not embedded and searched again.
+     * They keep ToolishRag's own arguments and output, so always search Neo4j:
+     * docs_hybridSearch is the one answered in-process by the chunk vector index.
+     */
     @Bean
-    McpToolExport documentationRagTools(
+    ToolCallbackProvider documentationRagTools(
             DrivineStore drivineStore,
-            GuideProperties properties
+            GuideProperties properties,
+            SearchResultCache searchResultCache
     ) {
         var toolishRag = new ToolishRag(
-                "docs",
+                DocsSearchTools.DOCS,
                 "Embabel docs",
                 drivineStore
         );
-        return McpToolExport.fromLlmReference(
+        var export = McpToolExport.fromLlmReference(
                 toolishRag,
                 properties.toolNamingStrategy()
         );
+        return ToolCallbackProvider.from(export.getToolCallbacks().stream()
+                .map(searchResultCache::cached)
+                .toList());
+    }
+
+    /**
+     * Single-call hybrid search alongside the docs_* tools, so that clients
+     * need not call vector and text search separately
+     */
+    @Bean
+    ToolCallbackProvider documentationHybridSearchTool(
+            DocsSearchService docsSearchService,
+            GuideProperties properties,
+            SearchResultCache searchResultCache
+    ) {
+        var name = properties.toolNamingStrategy()
+                .transform(DocsSearchTools.NAMING_STRATEGY.transform(DocsSearchTools.HYBRID_SEARCH));
+        // Cached here rather than wrapped, so that results missing a failed search are not cached
+        var tool = FunctionToolCallback
+                .builder(name, (DocsSearchService.HybridSearchRequest request) -> searchResultCache.get(
+                        name, request, () -> docsSearchService.hybridSearchResult(request)))
+                .description(DocsSearchService.HYBRID_SEARCH_DESCRIPTION)
+                .inputType(DocsSearchService.HybridSearchRequest.class)
+                .build();
+        return ToolCallbackProvider.from(tool);
     }
 
     @Bean
@@ -33,6 +33,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.transaction.PlatformTransactionManager;
 
+
 /**
  * Configuration for RAG (Retrieval Augmented Generation) components.
  * Creates the DrivineStore and related beans for Neo4j-based RAG operations.
@@ -48,9 +49,35 @@ class RagConfiguration {
         return modelProvider.getEmbeddingService(ModelSelectionCriteria.getPlatformDefault());
     }
 
+    /**
+     * Queries, including HyDE queries, are embedded one at a time and often repeat.
+     * Shared by the store and the chunk vector index, so a query is embedded once for both.
+     */
+    @Bean
+    QueryEmbeddingCache queryEmbeddingCache(EmbeddingService embeddingService, GuideProperties guideProperties) {
+        return new QueryEmbeddingCache(embeddingService, guideProperties.embedding().queryCacheSize());
+    }
+
+    @Bean
+    ChunkTransformerChain chunkTransformer(GuideProperties guideProperties) {
+        return ChunkTransformerChain.from(guideProperties.chunkTransformation());
+    }
+
+    /**
+     * Declare another Reranker bean, such as an LLM scorer, to replace this
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    Reranker reranker(GuideProperties guideProperties) {
+        return switch (guideProperties.search().reranker()) {
+            case NONE -> Reranker.NONE;
+            case LEXICAL -> new LexicalReranker();
+        };
+    }
+
     @Bean
-    ChunkTransformer chunkTransformer() {
-        return ChunkTransformer.NO_OP;
+    SearchResultCache searchResultCache(GuideProperties guideProperties) {
+        return new SearchResultCache(guideProperties.search());
     }
 
     @Bean
@@ -58,19 +85,35 @@ class RagConfiguration {
     DrivineStore drivineStore(
             @Qualifier("neo") PersistenceManager persistenceManager,
             PlatformTransactionManager platformTransactionManager,
-            EmbeddingService embeddingService,
+            QueryEmbeddingCache queryEmbeddingCache,
             ChunkTransformer chunkTransformer,
             NeoRagServiceProperties neoRagProperties,
-            GuideProperties guideProperties) {
+            GuideProperties guideProperties,
+            DrivineEmbeddingCache embeddingCache) {
         var chunkerConfig = guideProperties.chunkerConfig() != null
                 ? guideProperties.chunkerConfig()
                 : new ContentChunker.Config();
+        var embedding = guideProperties.embedding();
+        // Single-text queries reach the query cache; chunks, embedded many at a time, pass through it
+        EmbeddingService chunkEmbeddingService = new BatchingEmbeddingService(
+                queryEmbeddingCache,
+                embedding.maxBatchSize(),
+                embedding.maxBatchTokens(),
+                embedding.linger(),
+                embedding.maxRetries(),
+                embedding.initialBackoff(),
+                embedding.maxCallsPerMinute()
+        );
+        if (embedding.cache()) {
+            // Look up the cache before batching, so that only misses are sent to the model
+            chunkEmbeddingService = new CachingEmbeddingService(chunkEmbeddingService, embeddingCache);
+        }
         return new DrivineStore(
                 persistenceManager,
                 neoRagProperties,
                 chunkerConfig,
                 chunkTransformer,
-                embeddingService,
+                chunkEmbeddingService,
                 platformTransactionManager,
                 new DrivineCypherSearch(persistenceManager)
         );
@@ -0,0 +1,71 @@
+package com.embabel.guide.rag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Merges two ranked result lists by reciprocal-rank fusion: each item scores
+ * the sum of 1 / (k + rank) over the lists it appears in. Only ranks are used,
+ * so lists whose scores are on different scales, such as cosine similarity and
+ * Lucene relevance, can be combined without normalization.
+ */
+final class ReciprocalRankFusion {
+
+    /**
+     * Constant from the original RRF paper, which damps the influence of top ranks
+     */
+    static final int DEFAULT_K = 60;
+
+    /**
+     * @param item       the item, taken from the first list if it appears in both
+     * @param score      fused score
+     * @param firstRank  1-based rank in the first list, or 0 if absent
+     * @param secondRank 1-based rank in the second list, or 0 if absent
+     */
+    record Fused<T>(T item, double score, int firstRank, int secondRank) {
+
+        boolean inBoth() {
+            return firstRank > 0 && secondRank > 0;
+        }
+
+        private int bestRank() {
+            return Math.min(
+                    firstRank > 0 ? firstRank : Integer.MAX_VALUE,
+                    secondRank > 0 ? secondRank : Integer.MAX_VALUE);
+        }
+    }
+
+    private ReciprocalRankFusion() {
+    }
+
+    /**
+     * Fuse two lists, each in descending order of relevance
+     *
+     * @param key   identity of an item across the lists
+     * @param k     rank damping constant
+     * @param limit maximum number of results
+     * @return fused results, best first. Ties go to the item with the better single rank.
+     */
+    static <T> List<Fused<T>> fuse(List<T> first, List<T> second, Function<T, String> key, int k, int limit) {
+        var fused = new LinkedHashMap<String, Fused<T>>();
+        for (var i = 0; i < first.size(); i++) {
+            var item = first.get(i);
+            fused.putIfAbsent(key.apply(item), new Fused<>(item, 1.0 / (k + i + 1), i + 1, 0));
+        }
+        for (var i = 0; i < second.size(); i++) {
+            var item = second.get(i);
+            var rank = i + 1;
+            fused.merge(key.apply(item), new Fused<>(item, 1.0 / (k + rank), 0, rank), (existing, added) ->
+                    existing.secondRank() > 0
+                            ? existing
+                            : new Fused<>(existing.item(), existing.score() + added.score(), existing.firstRank(), rank));
+        }
+        var results = new ArrayList<>(fused.values());
+        results.sort(Comparator.<Fused<T>>comparingDouble(Fused::score).reversed()
+                .thenComparingInt(Fused::bestRank));
+        return results.subList(0, Math.min(limit, results.size()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.embabel.guide.rag;
+
+import java.util.List;
+
+/**
+ * Reorders search candidates by relevance to the query, so that a wide candidate set
+ * can be narrowed to a small, precise set before it reaches the LLM.
+ * Declare a bean of this type, for example one that asks an LLM to score candidates,
+ * to replace the configured reranker.
+ */
+@FunctionalInterface
+public interface Reranker {
+
+    /**
+     * Keeps the candidates' order
+     */
+    Reranker NONE = (query, candidates, topK) -> candidates.subList(0, Math.min(topK, candidates.size()));
+
+    /**
+     * @param query      the search query
+     * @param candidates candidates in their original order, best first
+     * @param topK       maximum number of results
+     * @return at most topK candidates, most relevant first
+     */
+    List<DocsSearchService.Hit> rerank(String query, List<DocsSearchService.Hit> candidates, int topK);
+}
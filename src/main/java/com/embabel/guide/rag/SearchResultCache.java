@@ -0,0 +1,169 @@
+package com.embabel.guide.rag;
+
+import com.embabel.guide.GuideProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of docs tool results, so that the same question asked by many
+ * MCP clients is embedded and searched once. Entries are keyed by tool name and
+ * normalized arguments, and evicted by size (W-TinyLFU) and age.
+ * <p>
+ * Keys include the index version, which is advanced whenever content is ingested.
+ * A search that started before an ingestion can therefore never be cached as
+ * the answer to a search made after it.
+ */
+public class SearchResultCache {
+
+    /**
+     * A tool result, and whether it may be cached.
+     * Results that fell back after a failure, such as one search of two, are not cached.
+     */
+    public record Result(String text, boolean cacheable) {
+    }
+
+    /**
+     * Point-in-time cache statistics
+     */
+    public record Stats(long size, long hits, long misses, double hitRate, long indexVersion) {
+    }
+
+    private record Key(long indexVersion, String tool, String arguments) {
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(SearchResultCache.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong indexVersion = new AtomicLong();
+    @Nullable
+    private final Cache<Key, String> results;
+
+    public SearchResultCache(GuideProperties.Search config) {
+        results = config.resultCacheSize() > 0
+                ? Caffeine.newBuilder()
+                .maximumSize(config.resultCacheSize())
+                .expireAfterWrite(config.resultCacheTtl())
+                .recordStats()
+                .build()
+                : null;
+    }
+
+    /**
+     * Wrap a tool so that its results are served from this cache.
+     * Failures are not cached.
+     * Tools are called outside the cache's lock, so a slow search holds up no other entry,
+     * at the cost of concurrent identical calls each running before the first is cached.
+     */
+    public ToolCallback cached(ToolCallback tool) {
+        if (results == null) {
+            return tool;
+        }
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return tool.getToolDefinition();
+            }
+
+            @Override
+            public ToolMetadata getToolMetadata() {
+                return tool.getToolMetadata();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return get(key(tool, toolInput), () -> new Result(tool.call(toolInput), true));
+            }
+
+            @Override
+            public String call(String toolInput, @Nullable ToolContext toolContext) {
+                return get(key(tool, toolInput), () -> new Result(tool.call(toolInput, toolContext), true));
+            }
+        };
+    }
+
+    /**
+     * The cached result of calling the tool with these arguments, or else the loaded result,
+     * which is cached if it is cacheable
+     *
+     * @param tool      name of the tool
+     * @param arguments the tool's arguments, as an object that serializes to its JSON input
+     */
+    public String get(String tool, Object arguments, Supplier<Result> load) {
+        if (results == null) {
+            return load.get().text();
+        }
+        try {
+            return get(new Key(indexVersion.get(), tool, normalizeArguments(objectMapper.writeValueAsString(arguments))),
+                    load);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize arguments of " + tool, e);
+        }
+    }
+
+    private String get(Key key, Supplier<Result> load) {
+        var cached = results.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        var result = load.get();
+        if (result.cacheable()) {
+            // Keyed by the index version when the call started, so never served after a later ingestion
+            results.put(key, result.text());
+        }
+        return result.text();
+    }
+
+    @EventListener
+    public void onContentIngested(ContentIngestedEvent event) {
+        var version = indexVersion.incrementAndGet();
+        if (results != null) {
+            results.invalidateAll();
+        }
+        logger.debug("Search result cache cleared after ingesting {} documents from {}: index version {}",
+                event.documents(), event.source(), version);
+    }
+
+    public Stats stats() {
+        if (results == null) {
+            return new Stats(0, 0, 0, 0, indexVersion.get());
+        }
+        var stats = results.stats();
+        return new Stats(results.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                indexVersion.get());
+    }
+
+    private Key key(ToolCallback tool, String toolInput) {
+        return new Key(indexVersion.get(), tool.getToolDefinition().name(), normalizeArguments(toolInput));
+    }
+
+    /**
+     * Arguments in a canonical form: keys sorted, and whitespace and Unicode form normalized
+     * in string values, so that trivially different calls share an entry
+     */
+    String normalizeArguments(String toolInput) {
+        try {
+            Map<?, ?> arguments = objectMapper.readValue(toolInput, Map.class);
+            var normalized = new TreeMap<String, Object>();
+            arguments.forEach((name, value) -> normalized.put(String.valueOf(name),
+                    value instanceof String text ? CachingEmbeddingService.normalize(text) : value));
+            return objectMapper.writeValueAsString(normalized);
+        } catch (JsonProcessingException e) {
+            // Not a JSON object: fall back to the text itself
+            return CachingEmbeddingService.normalize(toolInput);
+        }
+    }
+}
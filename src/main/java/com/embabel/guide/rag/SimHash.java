@@ -0,0 +1,91 @@
+package com.embabel.guide.rag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 64-bit SimHash over word shingles.
+ * Texts that share most of their shingles get signatures that differ in only a few bits,
+ * so near-duplicates can be found by Hamming distance.
+ */
+public final class SimHash {
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}_]+");
+
+    private static final int SHINGLE_SIZE = 2;
+
+    /**
+     * Number of 16-bit bands used for candidate lookup. Signatures within 3 bits of each other
+     * must agree on at least one band.
+     */
+    public static final int BANDS = 4;
+
+    private SimHash() {
+    }
+
+    public static List<String> words(String text) {
+        var words = new ArrayList<String>();
+        var matcher = WORD.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            words.add(matcher.group());
+        }
+        return words;
+    }
+
+    public static long of(String text) {
+        return of(words(text));
+    }
+
+    public static long of(List<String> words) {
+        var weights = new int[64];
+        var shingles = new HashMap<String, Integer>();
+        if (words.size() < SHINGLE_SIZE) {
+            words.forEach(word -> shingles.merge(word, 1, Integer::sum));
+        } else {
+            for (var i = 0; i + SHINGLE_SIZE <= words.size(); i++) {
+                shingles.merge(String.join(" ", words.subList(i, i + SHINGLE_SIZE)), 1, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, Integer> shingle : shingles.entrySet()) {
+            var hash = fnv1a64(shingle.getKey());
+            for (var bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? shingle.getValue() : -shingle.getValue();
+            }
+        }
+        long signature = 0;
+        for (var bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                signature |= 1L << bit;
+            }
+        }
+        return signature;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * The given 16-bit band of the signature
+     */
+    public static int band(long signature, int band) {
+        return (int) ((signature >>> (band * 16)) & 0xFFFF);
+    }
+
+    private static long fnv1a64(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (var i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // Mix so that similar strings don't share low bits
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
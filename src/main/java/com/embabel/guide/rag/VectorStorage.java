@@ -0,0 +1,287 @@
+package com.embabel.guide.rag;
+
+import org.springframework.lang.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Off-heap storage of normalized vectors for {@link HnswIndex}, at full or reduced precision.
+ * Vectors are appended in fixed-size blocks and addressed by node number. Similarity is
+ * asymmetric: stored vectors may be quantized, but queries are always full precision.
+ */
+abstract class VectorStorage implements Closeable {
+
+    private static final int BLOCK_VECTORS = 1024;
+
+    protected final int dimensions;
+    private final int bytesPerVector;
+    private final List<ByteBuffer> blocks = new ArrayList<>();
+    private int size;
+
+    private VectorStorage(int dimensions, int bytesPerVector) {
+        this.dimensions = dimensions;
+        this.bytesPerVector = bytesPerVector;
+    }
+
+    /**
+     * 4 bytes per dimension
+     */
+    static VectorStorage floats(int dimensions) {
+        return new Floats(dimensions, null);
+    }
+
+    /**
+     * 4 bytes per dimension, in a temporary file mapped into memory, so that the operating system
+     * keeps only recently read vectors resident. The file is deleted when the storage is closed.
+     */
+    static VectorStorage mappedFloats(int dimensions, Path file) {
+        try {
+            return new Floats(dimensions, FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Scalar quantization: 1 byte per dimension plus a scale per vector
+     */
+    static VectorStorage int8(int dimensions) {
+        return new Int8(dimensions);
+    }
+
+    /**
+     * Binary quantization: the sign of each dimension, 1 bit per dimension
+     */
+    static VectorStorage binary(int dimensions) {
+        return new Binary(dimensions);
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Bytes allocated for vectors
+     */
+    long bytes() {
+        return (long) blocks.size() * BLOCK_VECTORS * bytesPerVector;
+    }
+
+    /**
+     * @param normalized unit-length vector
+     * @return the vector's node number
+     */
+    int add(float[] normalized) {
+        var node = size;
+        if (node % BLOCK_VECTORS == 0) {
+            blocks.add(allocate((long) blocks.size() * BLOCK_VECTORS * bytesPerVector, BLOCK_VECTORS * bytesPerVector)
+                    .order(ByteOrder.nativeOrder()));
+        }
+        encode(blocks.getLast(), offset(node), normalized);
+        size++;
+        return node;
+    }
+
+    /**
+     * Approximate cosine similarity between a stored vector and a normalized query
+     */
+    float similarity(int node, float[] query) {
+        return similarity(block(node), offset(node), query);
+    }
+
+    /**
+     * The stored vector, decoded to floats
+     */
+    float[] vector(int node) {
+        var vector = new float[dimensions];
+        decode(block(node), offset(node), vector);
+        return vector;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    protected ByteBuffer allocate(long position, int bytes) {
+        return ByteBuffer.allocateDirect(bytes);
+    }
+
+    protected abstract void encode(ByteBuffer block, int offset, float[] normalized);
+
+    protected abstract void decode(ByteBuffer block, int offset, float[] vector);
+
+    protected abstract float similarity(ByteBuffer block, int offset, float[] query);
+
+    private ByteBuffer block(int node) {
+        return blocks.get(node / BLOCK_VECTORS);
+    }
+
+    private int offset(int node) {
+        return (node % BLOCK_VECTORS) * bytesPerVector;
+    }
+
+    private static final class Floats extends VectorStorage {
+
+        @Nullable
+        private final FileChannel file;
+
+        Floats(int dimensions, @Nullable FileChannel file) {
+            super(dimensions, dimensions * Float.BYTES);
+            this.file = file;
+        }
+
+        @Override
+        protected ByteBuffer allocate(long position, int bytes) {
+            if (file == null) {
+                return super.allocate(position, bytes);
+            }
+            try {
+                return file.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        protected void encode(ByteBuffer block, int offset, float[] normalized) {
+            for (var i = 0; i < dimensions; i++) {
+                block.putFloat(offset + i * Float.BYTES, normalized[i]);
+            }
+        }
+
+        @Override
+        protected void decode(ByteBuffer block, int offset, float[] vector) {
+            for (var i = 0; i < dimensions; i++) {
+                vector[i] = block.getFloat(offset + i * Float.BYTES);
+            }
+        }
+
+        @Override
+        protected float similarity(ByteBuffer block, int offset, float[] query) {
+            var sum = 0f;
+            for (var i = 0; i < dimensions; i++) {
+                sum += block.getFloat(offset + i * Float.BYTES) * query[i];
+            }
+            return sum;
+        }
+
+        @Override
+        public void close() {
+            if (file == null) {
+                return;
+            }
+            try {
+                // Mapped blocks stay readable until collected, so searches in progress are unaffected
+                file.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Each vector is its largest absolute component, as a float,
+     * followed by every component as a multiple of that scale from -127 to 127
+     */
+    private static final class Int8 extends VectorStorage {
+
+        Int8(int dimensions) {
+            super(dimensions, Float.BYTES + dimensions);
+        }
+
+        @Override
+        protected void encode(ByteBuffer block, int offset, float[] normalized) {
+            var scale = 0f;
+            for (var v : normalized) {
+                scale = Math.max(scale, Math.abs(v));
+            }
+            block.putFloat(offset, scale / 127);
+            for (var i = 0; i < dimensions; i++) {
+                block.put(offset + Float.BYTES + i, scale == 0 ? 0 : (byte) Math.round(normalized[i] / scale * 127));
+            }
+        }
+
+        @Override
+        protected void decode(ByteBuffer block, int offset, float[] vector) {
+            var scale = block.getFloat(offset);
+            for (var i = 0; i < dimensions; i++) {
+                vector[i] = block.get(offset + Float.BYTES + i) * scale;
+            }
+        }
+
+        @Override
+        protected float similarity(ByteBuffer block, int offset, float[] query) {
+            var sum = 0f;
+            for (var i = 0; i < dimensions; i++) {
+                sum += block.get(offset + Float.BYTES + i) * query[i];
+            }
+            return sum * block.getFloat(offset);
+        }
+    }
+
+    /**
+     * Each vector is one bit per dimension, set where the component is positive.
+     * Decoded, every component is plus or minus 1/sqrt(dimensions), keeping the vector unit length.
+     */
+    private static final class Binary extends VectorStorage {
+
+        private final float magnitude;
+
+        Binary(int dimensions) {
+            super(dimensions, (dimensions + Long.SIZE - 1) / Long.SIZE * Long.BYTES);
+            this.magnitude = (float) (1 / Math.sqrt(dimensions));
+        }
+
+        @Override
+        protected void encode(ByteBuffer block, int offset, float[] normalized) {
+            for (var word = 0; word * Long.SIZE < dimensions; word++) {
+                var bits = 0L;
+                for (var bit = 0; bit < Long.SIZE && word * Long.SIZE + bit < dimensions; bit++) {
+                    if (normalized[word * Long.SIZE + bit] > 0) {
+                        bits |= 1L << bit;
+                    }
+                }
+                block.putLong(offset + word * Long.BYTES, bits);
+            }
+        }
+
+        @Override
+        protected void decode(ByteBuffer block, int offset, float[] vector) {
+            for (var i = 0; i < dimensions; i++) {
+                vector[i] = bit(block, offset, i) ? magnitude : -magnitude;
+            }
+        }
+
+        @Override
+        protected float similarity(ByteBuffer block, int offset, float[] query) {
+            var sum = 0f;
+            for (var word = 0; word * Long.SIZE < dimensions; word++) {
+                var bits = block.getLong(offset + word * Long.BYTES);
+                var end = Math.min(Long.SIZE, dimensions - word * Long.SIZE);
+                for (var bit = 0; bit < end; bit++) {
+                    var q = query[word * Long.SIZE + bit];
+                    sum += (bits & (1L << bit)) != 0 ? q : -q;
+                }
+            }
+            return sum * magnitude;
+        }
+
+        private static boolean bit(ByteBuffer block, int offset, int i) {
+            return (block.getLong(offset + i / Long.SIZE * Long.BYTES) & (1L << (i % Long.SIZE))) != 0;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.embabel.guide.chat.controller
 
+import com.embabel.guide.chat.service.ChatResponseTimings
+import com.embabel.guide.chat.service.GuideRagServiceAdapter
 import com.embabel.guide.chat.service.JesseService
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestBody
 import org.springframework.web.bind.annotation.RequestMapping
@@ -8,7 +13,11 @@ import org.springframework.web.bind.annotation.RestController
 
 @RestController
 @RequestMapping("/api/messages")
-class ChatApiController(private val jesseService: JesseService) {
+class ChatApiController(
+    private val jesseService: JesseService,
+    private val responseTimings: ChatResponseTimings,
+    private val guideRagServiceAdapter: ObjectProvider<GuideRagServiceAdapter>
+) {
 
     data class SendMessageRequest(val sessionId: String, val fromWebUserId: String, val body: String)
 
@@ -20,4 +29,20 @@ class ChatApiController(private val jesseService: JesseService) {
             message = req.body
         )
     }
+
+    /**
+     * How long the chatbot has taken to respond, and how many messages got no response
+     */
+    @GetMapping("/stats")
+    fun stats(): ChatResponseTimings.Stats = responseTimings.stats()
+
+    /**
+     * Chat sessions held in memory, and how often messages found theirs there.
+     * Not found unless the Guide chatbot is in use.
+     */
+    @GetMapping("/stats/sessions")
+    fun sessionStats(): ResponseEntity<GuideRagServiceAdapter.SessionStats> =
+        guideRagServiceAdapter.ifAvailable
+            ?.let { ResponseEntity.ok(it.sessionStats()) }
+            ?: ResponseEntity.notFound().build()
 }
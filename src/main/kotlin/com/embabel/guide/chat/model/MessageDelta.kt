@@ -0,0 +1,17 @@
+package com.embabel.guide.chat.model
+
+import java.time.Instant
+
+/**
+ * Part of an assistant response, delivered while it is still being generated.
+ * Clients append deltas with the same responseId in sequence order, then replace them
+ * with the persisted message when it arrives on /queue/messages.
+ */
+data class MessageDelta(
+    val responseId: String,
+    val sessionId: String,
+    val seq: Int,
+    val delta: String,
+    val authorId: String? = null,
+    val ts: Instant = Instant.now()
+)
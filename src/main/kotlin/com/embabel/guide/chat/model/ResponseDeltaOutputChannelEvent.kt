@@ -0,0 +1,12 @@
+package com.embabel.guide.chat.model
+
+import com.embabel.agent.api.channel.OutputChannelEvent
+
+/**
+ * Text generated so far for a response that is being streamed.
+ * The complete AssistantMessage is still sent once generation finishes.
+ */
+data class ResponseDeltaOutputChannelEvent(
+    override val processId: String,
+    val delta: String
+) : OutputChannelEvent
@@ -93,7 +93,10 @@ class SecurityConfig(
                     "/api/auth/me",
                     "/api/hub/personas",
                     "/api/hub/sessions",
-                    "/api/v1/data/stats"
+                    "/api/v1/data/stats",
+                    "/api/v1/data/stats/chunk-transformers",
+                    "/api/v1/data/stats/search-cache",
+                    "/api/v1/data/stats/vector-index"
                 ).permitAll()
                 it.anyRequest().authenticated()
             }
@@ -0,0 +1,102 @@
+package com.embabel.guide.chat.service
+
+import org.springframework.stereotype.Component
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+import kotlin.math.ceil
+import kotlin.math.ln
+import kotlin.math.pow
+
+/**
+ * Time from receiving a chat message to having the chatbot's response, since startup.
+ * Latencies are counted in buckets about 10% wide, so percentiles are within 10% of the true value.
+ */
+@Component
+class ChatResponseTimings {
+
+    enum class Outcome { COMPLETED, TIMED_OUT, CANCELLED, FAILED }
+
+    data class Stats(
+        val completed: Long,
+        val timedOut: Long,
+        val cancelled: Long,
+        val failed: Long,
+        val average: Duration,
+        val p50: Duration,
+        val p99: Duration,
+        val max: Duration,
+    )
+
+    private val counts = Outcome.entries.associateWith { LongAdder() }
+    private val completedNanos = LongAdder()
+    private val maxNanos = AtomicLong()
+    private val buckets = AtomicLongArray(BUCKETS)
+
+    /**
+     * Record one message. Only completed responses count towards latency.
+     */
+    fun record(outcome: Outcome, elapsed: Duration) {
+        counts.getValue(outcome).increment()
+        if (outcome == Outcome.COMPLETED) {
+            completedNanos.add(elapsed.toNanos())
+            maxNanos.accumulateAndGet(elapsed.toNanos(), ::maxOf)
+            buckets.incrementAndGet(bucket(elapsed))
+        }
+    }
+
+    fun stats(): Stats {
+        val completed = counts.getValue(Outcome.COMPLETED).sum()
+        return Stats(
+            completed = completed,
+            timedOut = counts.getValue(Outcome.TIMED_OUT).sum(),
+            cancelled = counts.getValue(Outcome.CANCELLED).sum(),
+            failed = counts.getValue(Outcome.FAILED).sum(),
+            average = if (completed == 0L) Duration.ZERO else Duration.ofNanos(completedNanos.sum() / completed),
+            p50 = percentile(0.5),
+            p99 = percentile(0.99),
+            max = Duration.ofNanos(maxNanos.get()),
+        )
+    }
+
+    /**
+     * Upper bound of the bucket holding the given fraction of completed responses, capped at the slowest
+     */
+    private fun percentile(fraction: Double): Duration {
+        val counts = LongArray(BUCKETS) { buckets.get(it) }
+        val rank = ceil(counts.sum() * fraction).toLong()
+        if (rank == 0L) {
+            return Duration.ZERO
+        }
+        var seen = 0L
+        for (bucket in counts.indices) {
+            seen += counts[bucket]
+            if (seen >= rank) {
+                return minOf(upperBound(bucket), Duration.ofNanos(maxNanos.get()))
+            }
+        }
+        return Duration.ofNanos(maxNanos.get())
+    }
+
+    companion object {
+
+        private const val GROWTH = 1.1
+
+        /**
+         * Enough buckets from 1 ms to cover over an hour
+         */
+        private const val BUCKETS = 160
+
+        /**
+         * Bucket i holds latencies from GROWTH^i up to GROWTH^(i+1) milliseconds.
+         * The first also holds anything faster, and the last anything slower.
+         */
+        private fun bucket(elapsed: Duration): Int {
+            val millis = elapsed.toNanos() / 1e6
+            return if (millis <= 1.0) 0 else minOf((ln(millis) / ln(GROWTH)).toInt(), BUCKETS - 1)
+        }
+
+        private fun upperBound(bucket: Int): Duration = Duration.ofNanos((GROWTH.pow(bucket + 1) * 1e6).toLong())
+    }
+}
@@ -1,6 +1,7 @@
 package com.embabel.guide.chat.service
 
 import com.embabel.guide.chat.model.DeliveredMessage
+import com.embabel.guide.chat.model.MessageDelta
 import com.embabel.guide.chat.model.StatusMessage
 import org.slf4j.LoggerFactory
 import org.springframework.messaging.simp.SimpMessagingTemplate
@@ -18,6 +19,12 @@ class ChatService(private val messaging: SimpMessagingTemplate) {
         logger.info("[session={}] Message sent to user {}", msg.sessionId, toUserId)
     }
 
+    fun sendDeltaToUser(toUserId: String, delta: MessageDelta) {
+        logger.trace("[session={}] Sending delta {} to user {} via /queue/messages-delta",
+            delta.sessionId, delta.seq, toUserId)
+        messaging.convertAndSendToUser(toUserId, "/queue/messages-delta", delta)
+    }
+
     fun sendStatusToUser(toUserId: String, status: StatusMessage) {
         logger.debug("Sending status to user {} via /queue/status: {}", toUserId, status.status)
         messaging.convertAndSendToUser(toUserId, "/queue/status", status)
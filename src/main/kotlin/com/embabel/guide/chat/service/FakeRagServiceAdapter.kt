@@ -24,7 +24,8 @@ class FakeRagServiceAdapter : RagServiceAdapter {
         threadId: String,
         message: String,
         fromUserId: String,
-        onEvent: (String) -> Unit
+        onEvent: (String) -> Unit,
+        onDelta: (String) -> Unit
     ): String {
         logger.info("Processing fake RAG request from user: {} in thread: {}", fromUserId, threadId)
 
@@ -72,6 +73,12 @@ class FakeRagServiceAdapter : RagServiceAdapter {
             }
         }
 
+        // Stream a few words at a time, as the real adapter does
+        response.split(" ").chunked(4).forEachIndexed { i, words ->
+            onDelta((if (i > 0) " " else "") + words.joinToString(" "))
+            delay(10)
+        }
+
         logger.debug("Fake RAG response generated for user: {}", fromUserId)
         return response
     }
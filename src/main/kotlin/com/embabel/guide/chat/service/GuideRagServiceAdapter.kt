@@ -5,14 +5,28 @@ import com.embabel.chat.AssistantMessage
 import com.embabel.chat.ChatSession
 import com.embabel.chat.Chatbot
 import com.embabel.chat.UserMessage
+import com.embabel.guide.GuideProperties
+import com.embabel.guide.chat.model.ResponseDeltaOutputChannelEvent
+import com.embabel.guide.chat.service.ChatResponseTimings.Outcome
+import com.embabel.guide.domain.GuideUser
 import com.embabel.guide.domain.GuideUserRepository
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import jakarta.annotation.PreDestroy
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.delay
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runInterruptible
 import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
 import org.slf4j.LoggerFactory
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.stereotype.Service
-import java.util.concurrent.ConcurrentHashMap
+import java.time.Duration
 
 /**
  * Real implementation of RagServiceAdapter that integrates with the Guide chatbot.
@@ -21,7 +35,8 @@ import java.util.concurrent.ConcurrentHashMap
  * enabling real-time AI responses through the web interface.
  *
  * The chatbot uses STORED conversations, so message history is automatically loaded
- * when restoring a session by conversation ID.
+ * when restoring a session by conversation ID. Sessions are therefore only cached while in use:
+ * idle sessions, and the least used beyond a limit, are evicted and restored on their next message.
  */
 @Service
 @ConditionalOnProperty(
@@ -31,18 +46,39 @@ import java.util.concurrent.ConcurrentHashMap
 )
 class GuideRagServiceAdapter(
     private val chatbot: Chatbot,
-    private val guideUserRepository: GuideUserRepository
+    private val guideUserRepository: GuideUserRepository,
+    private val guideProperties: GuideProperties,
+    private val timings: ChatResponseTimings
 ) : RagServiceAdapter {
 
     private val logger = LoggerFactory.getLogger(GuideRagServiceAdapter::class.java)
 
     // Session cache to maintain AgentProcess continuity per thread
-    private val threadSessions = ConcurrentHashMap<String, SessionContext>()
+    private val threadSessions: Cache<String, SessionContext> = Caffeine.newBuilder()
+        .maximumSize(guideProperties.chat().maxSessions().toLong())
+        .expireAfterAccess(guideProperties.chat().sessionIdleTimeout())
+        .removalListener<String, SessionContext> { threadId, _, cause ->
+            logger.debug("Chat session for thread {} dropped from memory: {}", threadId, cause)
+        }
+        .recordStats()
+        .build()
+
+    // Chatbot processing, which outlives the wait for its response
+    private val processingScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    /**
+     * Point-in-time session cache statistics
+     */
+    data class SessionStats(
+        val size: Long,
+        val hits: Long,
+        val misses: Long,
+        val hitRate: Double,
+        val evictions: Long,
+    )
 
     companion object {
-        private const val RESPONSE_TIMEOUT_MS = 120000 // 2 minutes
-        private const val POLL_INTERVAL_MS = 500L
-        private const val DEFAULT_ERROR_MESSAGE =
+        internal const val DEFAULT_ERROR_MESSAGE =
             "I received your message but had trouble generating a response. Please try again."
     }
 
@@ -71,15 +107,16 @@ class GuideRagServiceAdapter(
         threadId: String,
         message: String,
         fromUserId: String,
-        onEvent: (String) -> Unit
+        onEvent: (String) -> Unit,
+        onDelta: (String) -> Unit
     ): String = withContext(Dispatchers.IO) {
         logger.info("Processing Guide RAG request from user: {} in thread: {}", fromUserId, threadId)
 
-        val responseBuilder = StringBuilder()
-        var isComplete = false
+        val start = System.nanoTime()
+        val response = CompletableDeferred<String?>()
 
         // Create output channel for this specific message
-        val messageOutputChannel = createOutputChannel(responseBuilder, onEvent) { isComplete = true }
+        val messageOutputChannel = createOutputChannel(response, onEvent, onDelta)
 
         try {
             val guideUser = guideUserRepository.findById(fromUserId)
@@ -88,42 +125,79 @@ class GuideRagServiceAdapter(
             // Get or create session context for this thread
             // The chatbot uses STORED conversations with conversationId=threadId,
             // so message history is automatically loaded when restoring a session
-            val sessionContext = threadSessions.computeIfAbsent(threadId) {
-                logger.info("Creating/restoring chat session for thread: {} (user: {})", threadId, fromUserId)
-                val dynamicChannel = DynamicOutputChannel()
-                dynamicChannel.currentDelegate = messageOutputChannel
-                val session = chatbot.createSession(guideUser, dynamicChannel, null, threadId)
-                SessionContext(session, dynamicChannel)
-            }
+            val sessionContext = threadSessions.getIfPresent(threadId)
+                ?: createSessionContext(threadId, fromUserId, guideUser, messageOutputChannel)
 
             // Update the dynamic channel to point to this message's output channel
             sessionContext.dynamicChannel.currentDelegate = messageOutputChannel
 
             // Process the message with the cached session (which maintains conversation history)
-            sessionContext.session.onUserMessage(UserMessage(message))
+            val content = awaitResponse(response) {
+                sessionContext.session.onUserMessage(UserMessage(message))
+            }
+            val outcome = when {
+                content == null -> {
+                    logger.warn("No response in thread {} within {}", threadId, guideProperties.chat().responseTimeout())
+                    Outcome.TIMED_OUT
+                }
 
-            waitForResponse { isComplete }
+                content.isBlank() -> {
+                    logger.warn("Chatbot finished without a response in thread {}", threadId)
+                    Outcome.FAILED
+                }
 
-            responseBuilder.toString().ifBlank { DEFAULT_ERROR_MESSAGE }
+                else -> Outcome.COMPLETED
+            }
+            timings.record(outcome, elapsedSince(start))
+
+            content?.ifBlank { null } ?: DEFAULT_ERROR_MESSAGE
+        } catch (e: CancellationException) {
+            timings.record(Outcome.CANCELLED, elapsedSince(start))
+            throw e
         } catch (e: Exception) {
+            timings.record(Outcome.FAILED, elapsedSince(start))
             logger.error("Error processing message from user {} in thread {}: {}", fromUserId, threadId, e.message, e)
             throw e
         }
     }
 
+    /**
+     * Restoring a session loads its stored conversation, so this happens outside the cache:
+     * a cache loader would hold up other threads' sessions while it ran.
+     * If another message for the thread restored it meanwhile, that session is used instead.
+     */
+    private fun createSessionContext(
+        threadId: String,
+        fromUserId: String,
+        guideUser: GuideUser,
+        outputChannel: OutputChannel
+    ): SessionContext {
+        logger.info("Creating/restoring chat session for thread: {} (user: {})", threadId, fromUserId)
+        val dynamicChannel = DynamicOutputChannel()
+        dynamicChannel.currentDelegate = outputChannel
+        val session = chatbot.createSession(guideUser, dynamicChannel, null, threadId)
+        val created = SessionContext(session, dynamicChannel)
+        return threadSessions.asMap().putIfAbsent(threadId, created) ?: created
+    }
+
     /**
      * Creates an output channel that captures chatbot events and responses.
      */
     private fun createOutputChannel(
-        responseBuilder: StringBuilder,
+        response: CompletableDeferred<String?>,
         onEvent: (String) -> Unit,
-        onComplete: () -> Unit
+        onDelta: (String) -> Unit
     ): OutputChannel = object : OutputChannel {
         override fun send(event: OutputChannelEvent) {
+            if (event is ResponseDeltaOutputChannelEvent) {
+                // Too frequent to log at debug
+                onDelta(event.delta)
+                return
+            }
             logger.debug("OutputChannel received event: {}", event)
 
             when (event) {
-                is MessageOutputChannelEvent -> handleMessageEvent(event, responseBuilder, onComplete)
+                is MessageOutputChannelEvent -> handleMessageEvent(event, response)
                 is ProgressOutputChannelEvent -> onEvent(event.message)
                 is LoggingOutputChannelEvent -> logger.debug("Logging event: {}", event.message)
                 else -> logger.debug("Unknown event type: {}", event)
@@ -133,16 +207,15 @@ class GuideRagServiceAdapter(
 
     /**
      * Handles message events from the chatbot output channel.
+     * The first assistant message is the response.
      */
     private fun handleMessageEvent(
         event: MessageOutputChannelEvent,
-        responseBuilder: StringBuilder,
-        onComplete: () -> Unit
+        response: CompletableDeferred<String?>
     ) {
         when (val msg = event.message) {
-            is AssistantMessage -> {
-                responseBuilder.append(msg.content)
-                onComplete()
+            is AssistantMessage -> if (!response.complete(msg.content)) {
+                logger.debug("Ignoring assistant message after the response: {}", msg)
             }
 
             else -> logger.debug("Received non-assistant message: {}", msg)
@@ -150,16 +223,55 @@ class GuideRagServiceAdapter(
     }
 
     /**
-     * Waits for the chatbot response with a timeout.
+     * Runs the chatbot and resumes as soon as its response arrives through the output channel.
+     * Processing is interrupted if no response arrives within the configured timeout,
+     * or if the caller is cancelled.
+     *
+     * @return the response, empty if processing finished without one, or null on timeout
      */
-    private suspend fun waitForResponse(isComplete: () -> Boolean) {
-        var waited = 0
-        while (!isComplete() && waited < RESPONSE_TIMEOUT_MS) {
-            delay(POLL_INTERVAL_MS)
-            waited += POLL_INTERVAL_MS.toInt()
+    private suspend fun awaitResponse(
+        response: CompletableDeferred<String?>,
+        process: () -> Unit
+    ): String? {
+        // The chatbot may still be finishing up after sending its response: don't wait for it
+        val processing = processingScope.launch { runInterruptible { process() } }
+        // Once processing is over no response can arrive, so stop waiting for one.
+        // Completing an already completed response has no effect.
+        processing.invokeOnCompletion { cause ->
+            if (cause != null) response.completeExceptionally(cause) else response.complete(null)
+        }
+        try {
+            return withTimeoutOrNull(guideProperties.chat().responseTimeout().toMillis()) { response.await() ?: "" }
+                .also { if (it == null) processing.cancel() }
+        } catch (e: CancellationException) {
+            processing.cancel()
+            throw e
         }
     }
 
+    private fun elapsedSince(start: Long): Duration = Duration.ofNanos(System.nanoTime() - start)
+
+    /**
+     * Misses are messages whose session had to be created or restored
+     */
+    fun sessionStats(): SessionStats {
+        // Evictions are otherwise only made, and counted, as the cache is used
+        threadSessions.cleanUp()
+        val stats = threadSessions.stats()
+        return SessionStats(
+            size = threadSessions.estimatedSize(),
+            hits = stats.hitCount(),
+            misses = stats.missCount(),
+            hitRate = stats.hitRate(),
+            evictions = stats.evictionCount(),
+        )
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        processingScope.cancel()
+    }
+
     /**
      * Generates a short title from message content using a one-shot call.
      * This does NOT use the user's session to avoid polluting conversation history.
@@ -167,10 +279,8 @@ class GuideRagServiceAdapter(
     override suspend fun generateTitle(content: String, fromUserId: String): String = withContext(Dispatchers.IO) {
         logger.debug("Generating title for content from user: {}", fromUserId)
 
-        val responseBuilder = StringBuilder()
-        var isComplete = false
-
-        val outputChannel = createOutputChannel(responseBuilder, {}) { isComplete = true }
+        val response = CompletableDeferred<String?>()
+        val outputChannel = createOutputChannel(response, {}, {})
 
         try {
             val guideUser = guideUserRepository.findById(fromUserId)
@@ -178,11 +288,13 @@ class GuideRagServiceAdapter(
 
             // Create a one-shot session (not cached) for title generation
             val session = chatbot.createSession(guideUser, outputChannel, null)
-            session.onUserMessage(UserMessage(RagServiceAdapter.TITLE_PROMPT + content))
-
-            waitForResponse { isComplete }
+            val title = awaitResponse(response) {
+                session.onUserMessage(UserMessage(RagServiceAdapter.TITLE_PROMPT + content))
+            }
 
-            responseBuilder.toString().trim().take(100).ifBlank { "New conversation" }
+            title.orEmpty().trim().take(100).ifBlank { "New conversation" }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             logger.error("Error generating title for user {}: {}", fromUserId, e.message, e)
             "New conversation"  // Fallback title on error
@@ -1,6 +1,7 @@
 package com.embabel.guide.chat.service
 
 import com.embabel.chat.store.model.StoredUser
+import com.embabel.guide.chat.model.MessageDelta
 import com.embabel.guide.chat.model.StatusMessage
 import com.embabel.guide.domain.GuideUserData
 import com.embabel.guide.domain.GuideUserRepository
@@ -134,14 +135,24 @@ class JesseService(
 
                 // Send message to RAG adapter - conversation history is auto-loaded by the chatbot
                 logger.info("[session={}] Calling RAG adapter", effectiveSessionId)
+                // Deltas show the response as it is generated; the persisted message follows on /queue/messages
+                val responseId = UUIDv7.generateString()
+                var seq = 0
                 val response = ragAdapter.sendMessage(
                     threadId = effectiveSessionId,
                     message = message,
-                    fromUserId = guideUserId
-                ) { event ->
-                    logger.debug("[session={}] RAG event for user {}: {}", effectiveSessionId, fromWebUserId, event)
-                    sendStatusToUser(fromWebUserId, event)
-                }
+                    fromUserId = guideUserId,
+                    onEvent = { event ->
+                        logger.debug("[session={}] RAG event for user {}: {}", effectiveSessionId, fromWebUserId, event)
+                        sendStatusToUser(fromWebUserId, event)
+                    },
+                    onDelta = { delta ->
+                        chatService.sendDeltaToUser(
+                            fromWebUserId,
+                            MessageDelta(responseId, effectiveSessionId, seq++, delta, JESSE_USER_ID)
+                        )
+                    }
+                )
                 logger.info("[session={}] RAG adapter returned response ({} chars)", effectiveSessionId, response.length)
 
                 // Clear status now that response is complete
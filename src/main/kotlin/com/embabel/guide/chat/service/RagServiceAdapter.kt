@@ -28,13 +28,16 @@ interface RagServiceAdapter {
      * @param fromUserId The ID of the user sending the message (for context/logging)
      * @param onEvent Callback function to receive real-time status updates during processing
      *                (e.g., "Planning response", "Querying database", "Generating answer")
+     * @param onDelta Callback function to receive the response text in pieces as it is generated,
+     *                if the response is streamed. The complete response is still returned.
      * @return The RAG system's response message
      */
     suspend fun sendMessage(
         threadId: String,
         message: String,
         fromUserId: String,
-        onEvent: (String) -> Unit = {}
+        onEvent: (String) -> Unit = {},
+        onDelta: (String) -> Unit = {}
     ): String
 
     /**
@@ -0,0 +1,208 @@
+package com.embabel.guide.rag
+
+import com.embabel.common.ai.model.EmbeddingService
+import org.slf4j.LoggerFactory
+import org.springframework.ai.retry.NonTransientAiException
+import org.springframework.ai.retry.TransientAiException
+import org.springframework.http.HttpStatus
+import org.springframework.web.client.RestClientResponseException
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+
+/**
+ * EmbeddingService decorator that coalesces concurrent multi-text embedding calls,
+ * such as those made by parallel document writes, into batches bounded by text count
+ * and estimated tokens. Batches rejected with HTTP 429 are retried with
+ * exponential backoff. Calls can also be limited to a maximum rate, so that background
+ * ingestion leaves provider quota for queries.
+ *
+ * There is no background thread: after lingering briefly so that concurrent writers can join
+ * the batch, the first waiting caller flushes the queue on behalf of everyone. If a batch fails,
+ * every request with texts in it fails, and their remaining texts are dropped from the queue.
+ * Single-text calls, as made for queries, pass straight through and never wait on a batch.
+ * Each text's embedding is the same as an unbatched call would return.
+ */
+class BatchingEmbeddingService(
+    private val delegate: EmbeddingService,
+    private val maxBatchSize: Int,
+    private val maxBatchTokens: Int,
+    private val linger: Duration,
+    private val maxRetries: Int,
+    private val initialBackoff: Duration,
+    maxCallsPerMinute: Int = 0,
+) : EmbeddingService by delegate {
+
+    private val logger = LoggerFactory.getLogger(BatchingEmbeddingService::class.java)
+
+    private val pending = LinkedBlockingQueue<Slot>()
+    private val flushLock = ReentrantLock()
+
+    // Batches are spaced evenly to respect the rate limit, if any
+    private val minNanosBetweenCalls = if (maxCallsPerMinute > 0) 60_000_000_000L / maxCallsPerMinute else 0L
+    private var nextCallAt = System.nanoTime()
+
+    /**
+     * One caller's embed request, completed when every one of its texts has a vector
+     */
+    private class Request(size: Int) {
+        val vectors = arrayOfNulls<FloatArray>(size)
+        val remaining = AtomicInteger(size)
+        val result = CompletableFuture<List<FloatArray>>()
+
+        fun complete(index: Int, vector: FloatArray) {
+            vectors[index] = vector
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(vectors.map { it!! })
+            }
+        }
+    }
+
+    private class Slot(val text: String, val request: Request, val index: Int)
+
+    override fun embed(texts: List<String>): List<FloatArray> {
+        if (texts.isEmpty()) {
+            return emptyList()
+        }
+        val request = Request(texts.size)
+        texts.forEachIndexed { index, text -> pending.add(Slot(text, request, index)) }
+        if (pending.size < maxBatchSize && !linger.isZero) {
+            // Without holding the lock, so that another caller can flush a full batch meanwhile
+            await(request)
+        }
+        while (!request.result.isDone) {
+            if (flushLock.tryLock()) {
+                try {
+                    flushUntilDone(request)
+                } finally {
+                    flushLock.unlock()
+                }
+            } else {
+                // Another caller is flushing; our texts may be in its batch
+                await(request)
+            }
+        }
+        try {
+            return request.result.join()
+        } catch (e: CompletionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**
+     * Flush batches until our own request is complete, leaving later work to other callers
+     */
+    private fun flushUntilDone(request: Request) {
+        while (!request.result.isDone) {
+            val batch = takeBatch()
+            if (batch.isEmpty()) {
+                return
+            }
+            try {
+                val vectors = embedWithRetry(batch.map { it.text })
+                batch.forEachIndexed { i, slot -> slot.request.complete(slot.index, vectors[i]) }
+            } catch (e: Exception) {
+                val failed = batch.mapTo(HashSet()) { it.request }
+                // Embedding the rest of a failed request would waste calls
+                pending.removeIf { it.request in failed }
+                failed.forEach { it.result.completeExceptionally(e) }
+            }
+        }
+    }
+
+    /**
+     * Wait up to the linger time for a request to complete
+     */
+    private fun await(request: Request) {
+        runCatching { request.result.get(linger.toMillis().coerceAtLeast(1), TimeUnit.MILLISECONDS) }
+    }
+
+    private fun takeBatch(): List<Slot> {
+        val batch = mutableListOf<Slot>()
+        var tokens = 0
+        while (batch.size < maxBatchSize) {
+            val next = pending.peek() ?: break
+            val cost = estimateTokens(next.text)
+            if (batch.isNotEmpty() && tokens + cost > maxBatchTokens) {
+                break
+            }
+            pending.poll()
+            batch += next
+            tokens += cost
+        }
+        return batch
+    }
+
+    private fun embedWithRetry(texts: List<String>): List<FloatArray> {
+        var backoff = initialBackoff
+        var attempt = 0
+        while (true) {
+            awaitRateLimit()
+            try {
+                return delegate.embed(texts)
+            } catch (e: Exception) {
+                if (attempt >= maxRetries || !isRateLimited(e)) {
+                    throw e
+                }
+                attempt++
+                logger.warn(
+                    "Embedding batch of {} texts was rate limited, retrying in {} ms (attempt {}/{})",
+                    texts.size, backoff.toMillis(), attempt, maxRetries
+                )
+                Thread.sleep(backoff.toMillis())
+                backoff = backoff.multipliedBy(2)
+            }
+        }
+    }
+
+    /**
+     * Block until the next call is allowed by the configured rate limit
+     */
+    private fun awaitRateLimit() {
+        if (minNanosBetweenCalls == 0L) {
+            return
+        }
+        val wait = synchronized(this) {
+            val now = System.nanoTime()
+            val callAt = maxOf(now, nextCallAt)
+            nextCallAt = callAt + minNanosBetweenCalls
+            callAt - now
+        }
+        if (wait > 0) {
+            logger.debug("Embedding rate limit: waiting {} ms", TimeUnit.NANOSECONDS.toMillis(wait))
+            TimeUnit.NANOSECONDS.sleep(wait)
+        }
+    }
+
+    companion object {
+
+        /**
+         * Rough token count: English text averages about four characters per token
+         */
+        fun estimateTokens(text: String): Int = text.length / 4 + 1
+
+        /**
+         * Spring AI's model clients report HTTP errors as "<status> - <body>"
+         */
+        private val SPRING_AI_TOO_MANY_REQUESTS = Regex("^429\\b")
+
+        /**
+         * Whether the failure, or any of its causes, is an HTTP 429 response,
+         * whether raised by a RestClient or translated by Spring AI's model clients
+         */
+        fun isRateLimited(e: Throwable): Boolean =
+            generateSequence(e) { it.cause }.any { t ->
+                when (t) {
+                    is RestClientResponseException -> t.statusCode.isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)
+                    is NonTransientAiException, is TransientAiException ->
+                        t.message?.let { SPRING_AI_TOO_MANY_REQUESTS.containsMatchIn(it) } == true
+
+                    else -> false
+                }
+            }
+    }
+}
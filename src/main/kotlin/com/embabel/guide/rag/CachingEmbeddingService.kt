@@ -0,0 +1,89 @@
+package com.embabel.guide.rag
+
+import com.embabel.common.ai.model.EmbeddingService
+import org.slf4j.LoggerFactory
+import java.security.MessageDigest
+import java.text.Normalizer
+import java.util.HexFormat
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * EmbeddingService decorator that looks up multi-text embedding calls, as made for chunks,
+ * in a persistent cache keyed by a hash of the normalized text and the model name.
+ * Only texts missing from the cache reach the delegate, so refreshing a document
+ * pays only for the chunks that changed.
+ *
+ * Single-text calls, as made for queries, pass straight through.
+ * Cache failures are logged and treated as misses: they never fail ingestion.
+ */
+class CachingEmbeddingService(
+    private val delegate: EmbeddingService,
+    private val cache: EmbeddingCache,
+) : EmbeddingService by delegate {
+
+    private val logger = LoggerFactory.getLogger(CachingEmbeddingService::class.java)
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    override fun embed(texts: List<String>): List<FloatArray> {
+        if (texts.isEmpty()) {
+            return emptyList()
+        }
+        val keys = texts.map { cacheKey(it) }
+        val cached = try {
+            cache.getAll(keys.toSet())
+        } catch (e: Exception) {
+            logger.warn("Embedding cache lookup failed, embedding all {} texts: {}", texts.size, e.message)
+            emptyMap()
+        }
+
+        // Embed each distinct missing text once
+        val missing = LinkedHashMap<String, String>()
+        keys.forEachIndexed { i, key -> if (key !in cached) missing.putIfAbsent(key, texts[i]) }
+        val fresh = if (missing.isEmpty()) {
+            emptyMap()
+        } else {
+            missing.keys.zip(delegate.embed(missing.values.toList())).toMap()
+        }
+        if (fresh.isNotEmpty()) {
+            try {
+                cache.putAll(fresh, name)
+            } catch (e: Exception) {
+                logger.warn("Failed to store {} embeddings in cache: {}", fresh.size, e.message)
+            }
+        }
+
+        val hitCount = keys.count { it in cached }
+        hits.addAndGet(hitCount.toLong())
+        misses.addAndGet((texts.size - hitCount).toLong())
+        logger.debug("Embedding cache: {}/{} texts cached, {} embedded", hitCount, texts.size, fresh.size)
+        return keys.map { cached[it] ?: fresh.getValue(it) }
+    }
+
+    /**
+     * Fraction of texts served from the cache since startup
+     */
+    fun hitRatio(): Double {
+        val total = hits.get() + misses.get()
+        return if (total == 0L) 0.0 else hits.get().toDouble() / total
+    }
+
+    private fun cacheKey(text: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+            .digest(normalize(text).toByteArray(Charsets.UTF_8))
+        return HexFormat.of().formatHex(digest) + ":" + name
+    }
+
+    companion object {
+
+        private val WHITESPACE = Regex("\\s+")
+
+        /**
+         * Normalize text so that differences in Unicode form or whitespace don't defeat the cache
+         */
+        @JvmStatic
+        fun normalize(text: String): String =
+            Normalizer.normalize(text, Normalizer.Form.NFC).trim().replace(WHITESPACE, " ")
+    }
+}
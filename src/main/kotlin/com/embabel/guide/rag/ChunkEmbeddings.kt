@@ -0,0 +1,94 @@
+package com.embabel.guide.rag
+
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+/**
+ * Reads chunk embeddings from Neo4j, for replicas of the vector index held elsewhere.
+ * Only chunks in the vector index are read: near-duplicates have had their embeddings set aside.
+ */
+@Repository
+class ChunkEmbeddings(
+    @Qualifier("neo") private val manager: PersistenceManager
+) {
+
+    /**
+     * A chunk and its embedding
+     *
+     * @param version [versions] value of the embedding
+     */
+    class StoredChunk(val id: String, val text: String, val embedding: FloatArray, val version: String)
+
+    /**
+     * Versions of the embeddings of all chunks with one, by chunk id.
+     * Chunks without a version, such as those written since the last call, are given a new one first,
+     * so that changes are found without reading any embedding. Chunk nodes written by the store start
+     * without a version: code that re-embeds an existing chunk node must remove its version.
+     */
+    @Transactional
+    fun versions(): Map<String, String> {
+        val cypher = """
+            MATCH (c:Chunk)
+            WHERE c.embedding IS NOT NULL
+            FOREACH (_ IN CASE WHEN c.$VERSION IS NULL THEN [1] ELSE [] END | SET c.$VERSION = randomUUID())
+            RETURN {id: c.id, version: c.$VERSION}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(emptyMap<String, Any>())
+                .transform(Map::class.java)
+        ).associate { row ->
+            val chunk = row as Map<String, Any?>
+            chunk["id"] as String to chunk["version"] as String
+        }
+    }
+
+    @Transactional(readOnly = true)
+    fun byIds(ids: Collection<String>): List<StoredChunk> {
+        if (ids.isEmpty()) {
+            return emptyList()
+        }
+        val cypher = """
+            UNWIND ${'$'}ids AS id
+            MATCH (c:Chunk {id: id})
+            WHERE c.embedding IS NOT NULL
+            RETURN {
+              id: c.id,
+              text: coalesce(c.text, ''),
+              embedding: c.embedding,
+              version: coalesce(c.$VERSION, '')
+            }
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("ids" to ids.toList()))
+                .transform(Map::class.java)
+        ).map { row ->
+            val chunk = row as Map<String, Any?>
+            val embedding = chunk["embedding"] as List<Number>
+            StoredChunk(
+                chunk["id"] as String,
+                chunk["text"] as String,
+                FloatArray(embedding.size) { embedding[it].toFloat() },
+                chunk["version"] as String,
+            )
+        }
+    }
+
+    companion object {
+
+        /**
+         * Chunk property identifying the embedding it was last read with
+         */
+        private const val VERSION = "embeddingVersion"
+    }
+}
@@ -0,0 +1,166 @@
+package com.embabel.guide.rag
+
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+/**
+ * Remembers what was last written for each ingested URI, as ContentSourceState nodes,
+ * so that a refresh can tell whether re-read content actually changed,
+ * along with the HTTP validators needed to avoid re-reading it at all.
+ *
+ * State is kept apart from the content graph, so it can outlive the content it describes,
+ * for example when content is deleted by hand. It is only trusted while content with its URI exists.
+ */
+@Repository
+class ContentSourceStateRepository(
+    @Qualifier("neo") private val manager: PersistenceManager
+) {
+
+    /**
+     * Create the uniqueness constraint backing state lookups, and the index used to check that content exists
+     */
+    @Transactional
+    fun provision() {
+        listOf(
+            """
+            CREATE CONSTRAINT content_source_state_uri IF NOT EXISTS
+            FOR (s:ContentSourceState) REQUIRE s.uri IS UNIQUE
+            """,
+            """
+            CREATE INDEX content_element_uri IF NOT EXISTS
+            FOR (c:ContentElement) ON (c.uri)
+            """,
+        ).forEach { cypher ->
+            manager.execute(
+                QuerySpecification
+                    .withStatement(cypher)
+                    .bind(emptyMap<String, Any>())
+            )
+        }
+    }
+
+    /**
+     * The fingerprint of what was last written for the URI, or null if nothing was,
+     * or if the content written has since been deleted
+     */
+    @Transactional(readOnly = true)
+    fun findFingerprint(uri: String): ContentFingerprint? {
+        val cypher = """
+            MATCH (s:ContentSourceState {uri: ${'$'}uri})
+            WHERE s.contentDigest IS NOT NULL
+              AND EXISTS { MATCH (:ContentElement {uri: s.uri}) }
+            RETURN {
+              digest: s.contentDigest,
+              sectionHashes: s.sectionHashes
+            }
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.optionalGetOne(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("uri" to uri))
+                .transform(Map::class.java)
+        ).map { row ->
+            val state = row as Map<String, Any?>
+            ContentFingerprint(state["digest"] as String, state["sectionHashes"] as List<String>)
+        }.orElse(null)
+    }
+
+    @Transactional
+    fun saveFingerprint(uri: String, fingerprint: ContentFingerprint) {
+        val cypher = """
+            MERGE (s:ContentSourceState {uri: ${'$'}uri})
+            SET s.contentDigest = ${'$'}digest,
+                s.sectionHashes = ${'$'}sectionHashes,
+                s.writtenAt = datetime()
+            """
+
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(
+                    mapOf(
+                        "uri" to uri,
+                        "digest" to fingerprint.digest,
+                        "sectionHashes" to fingerprint.sectionHashes
+                    )
+                )
+        )
+    }
+
+    /**
+     * HTTP validators of the last response for the URI. None if the content written has since been deleted,
+     * since sending them could get a 304 response, and the content would never be read again.
+     */
+    @Transactional(readOnly = true)
+    fun findValidators(uri: String): ConditionalFetcher.Validators {
+        val cypher = """
+            MATCH (s:ContentSourceState {uri: ${'$'}uri})
+            WHERE EXISTS { MATCH (:ContentElement {uri: s.uri}) }
+            RETURN {
+              etag: s.etag,
+              lastModified: s.lastModified
+            }
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.optionalGetOne(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("uri" to uri))
+                .transform(Map::class.java)
+        ).map { row ->
+            val state = row as Map<String, Any?>
+            ConditionalFetcher.Validators(state["etag"] as String?, state["lastModified"] as String?)
+        }.orElse(ConditionalFetcher.Validators.NONE)
+    }
+
+    @Transactional
+    fun saveValidators(uri: String, validators: ConditionalFetcher.Validators) {
+        val cypher = """
+            MERGE (s:ContentSourceState {uri: ${'$'}uri})
+            SET s.etag = ${'$'}etag,
+                s.lastModified = ${'$'}lastModified
+            """
+
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(
+                    mapOf(
+                        "uri" to uri,
+                        "etag" to validators.etag,
+                        "lastModified" to validators.lastModified
+                    )
+                )
+        )
+    }
+
+    /**
+     * Delete the state of URIs whose content no longer exists
+     *
+     * @return the number of states deleted
+     */
+    @Transactional
+    fun deleteOrphans(): Int {
+        val cypher = """
+            MATCH (s:ContentSourceState)
+            WHERE NOT EXISTS { MATCH (:ContentElement {uri: s.uri}) }
+            DETACH DELETE s
+            RETURN {deleted: count(s)}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        val row = manager.getOne(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(emptyMap<String, Any>())
+                .transform(Map::class.java)
+        ) as Map<String, Any?>
+        return (row["deleted"] as Number).toInt()
+    }
+}
@@ -0,0 +1,124 @@
+package com.embabel.guide.rag
+
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+import java.time.Duration
+
+/**
+ * Neo4j-backed embedding cache.
+ * Entries are EmbeddingCacheEntry nodes, kept apart from the content graph
+ * so that they survive documents being deleted and rewritten.
+ * Each lookup hit or write marks the entry used; entries unused for long enough can be pruned.
+ */
+@Repository
+class DrivineEmbeddingCache(
+    @Qualifier("neo") private val manager: PersistenceManager
+) : EmbeddingCache {
+
+    /**
+     * Create the uniqueness constraint backing key lookups, and the index used for pruning
+     */
+    @Transactional
+    fun provision() {
+        listOf(
+            """
+            CREATE CONSTRAINT embedding_cache_key IF NOT EXISTS
+            FOR (e:EmbeddingCacheEntry) REQUIRE e.key IS UNIQUE
+            """,
+            """
+            CREATE INDEX embedding_cache_used_at IF NOT EXISTS
+            FOR (e:EmbeddingCacheEntry) ON (e.usedAt)
+            """,
+        ).forEach { cypher ->
+            manager.execute(
+                QuerySpecification
+                    .withStatement(cypher)
+                    .bind(emptyMap<String, Any>())
+            )
+        }
+    }
+
+    @Transactional
+    override fun getAll(keys: Collection<String>): Map<String, FloatArray> {
+        if (keys.isEmpty()) {
+            return emptyMap()
+        }
+        val cypher = """
+            UNWIND ${'$'}keys AS key
+            MATCH (e:EmbeddingCacheEntry {key: key})
+            SET e.usedAt = datetime()
+            RETURN {
+              key: e.key,
+              embedding: e.embedding
+            }
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("keys" to keys.toList()))
+                .transform(Map::class.java)
+        ).associate { row ->
+            val entry = row as Map<String, Any?>
+            val embedding = entry["embedding"] as List<Number>
+            entry["key"] as String to FloatArray(embedding.size) { embedding[it].toFloat() }
+        }
+    }
+
+    @Transactional
+    override fun putAll(embeddings: Map<String, FloatArray>, model: String) {
+        if (embeddings.isEmpty()) {
+            return
+        }
+        val cypher = """
+            UNWIND ${'$'}entries AS entry
+            MERGE (e:EmbeddingCacheEntry {key: entry.key})
+            SET e.embedding = entry.embedding,
+                e.model = ${'$'}model,
+                e.updatedAt = datetime(),
+                e.usedAt = datetime()
+            """
+
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(
+                    mapOf(
+                        "entries" to embeddings.map { (key, embedding) ->
+                            mapOf("key" to key, "embedding" to embedding.toList())
+                        },
+                        "model" to model
+                    )
+                )
+        )
+    }
+
+    /**
+     * Delete entries that no chunk written or refreshed within the given time has used,
+     * such as embeddings of text that has since changed
+     *
+     * @return the number of entries deleted
+     */
+    @Transactional
+    fun pruneUnusedFor(maxAge: Duration): Long {
+        val cypher = """
+            MATCH (e:EmbeddingCacheEntry)
+            WHERE e.usedAt < datetime() - duration(${'$'}maxAge)
+            DETACH DELETE e
+            RETURN {deleted: count(e)}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        val row = manager.getOne(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("maxAge" to maxAge.toString()))
+                .transform(Map::class.java)
+        ) as Map<String, Any?>
+        return (row["deleted"] as Number).toLong()
+    }
+}
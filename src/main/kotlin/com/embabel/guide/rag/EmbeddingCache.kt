@@ -0,0 +1,18 @@
+package com.embabel.guide.rag
+
+/**
+ * Persistent store of embeddings, keyed by a hash of the embedded content
+ * and the name of the model that produced them.
+ */
+interface EmbeddingCache {
+
+    /**
+     * Returns the cached embeddings for whichever of the keys are present
+     */
+    fun getAll(keys: Collection<String>): Map<String, FloatArray>
+
+    /**
+     * Stores embeddings produced by the given model, replacing any existing entries for the same keys
+     */
+    fun putAll(embeddings: Map<String, FloatArray>, model: String)
+}
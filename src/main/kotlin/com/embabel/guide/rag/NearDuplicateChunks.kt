@@ -0,0 +1,208 @@
+package com.embabel.guide.rag
+
+import com.embabel.guide.GuideProperties
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+/**
+ * Collapses near-duplicate chunks, such as passages repeated between the docs, the README and blog posts.
+ * Each new chunk gets a SimHash signature. A chunk within the configured Hamming distance of an existing
+ * chunk is linked to it with DUPLICATE_OF, and its embedding is set aside, so that the vector index
+ * holds one copy and retrieval returns it once. The duplicate stays in its own document, so every
+ * source remains a provenance link to the canonical chunk.
+ * If a canonical chunk is deleted, for example when its document is rewritten, its duplicates get
+ * their embeddings back and are examined again.
+ * Full-text search still matches duplicates' text, so searches drop them using [duplicatesAmong].
+ */
+@Repository
+class NearDuplicateChunks(
+    @Qualifier("neo") private val manager: PersistenceManager,
+    private val guideProperties: GuideProperties,
+) {
+
+    private val logger = LoggerFactory.getLogger(NearDuplicateChunks::class.java)
+
+    data class Result(val examined: Int, val duplicates: Int, val restored: Int)
+
+    private class Signature(val id: String, val simhash: Long)
+
+    @Transactional
+    fun deduplicate(): Result {
+        val config = guideProperties.deduplication()
+        val restored = restoreOrphans()
+        val unsigned = unsignedChunks()
+        if (unsigned.isEmpty()) {
+            // Nothing new, so don't load every existing signature
+            return Result(0, 0, restored)
+        }
+        val index = BandIndex()
+        canonicalSignatures(config.minChunkLength()).forEach { index.add(it) }
+
+        val signatures = mutableListOf<Map<String, Any>>()
+        val duplicates = mutableListOf<Map<String, Any>>()
+        for ((id, text) in unsigned) {
+            val simhash = SimHash.of(text)
+            signatures += mapOf("id" to id, "simhash" to simhash)
+            if (text.length < config.minChunkLength()) {
+                // Too short to say anything about, like a lone heading
+                continue
+            }
+            val canonical = index.nearest(simhash, config.maxDistance())
+            if (canonical != null && canonical.id != id) {
+                duplicates += mapOf("id" to id, "canonical" to canonical.id)
+            } else {
+                index.add(Signature(id, simhash))
+            }
+        }
+        saveSignatures(signatures)
+        linkDuplicates(duplicates)
+        val result = Result(signatures.size, duplicates.size, restored)
+        if (signatures.isNotEmpty() || restored > 0) {
+            logger.info(
+                "Examined {} new chunks: {} near-duplicates collapsed, {} restored after their canonical chunk was removed",
+                result.examined, result.duplicates, result.restored
+            )
+        }
+        return result
+    }
+
+    /**
+     * Ids of the given chunks that duplicate another chunk
+     */
+    fun duplicatesAmong(ids: Collection<String>): Set<String> {
+        if (ids.isEmpty()) {
+            return emptySet()
+        }
+        val cypher = """
+            MATCH (c:Chunk)-[:DUPLICATE_OF]->(:Chunk)
+            WHERE c.id IN ${'$'}ids
+            RETURN {id: c.id}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("ids" to ids.toList()))
+                .transform(Map::class.java)
+        ).mapTo(HashSet()) { row -> (row as Map<String, Any?>)["id"] as String }
+    }
+
+    /**
+     * Signatures bucketed by 16-bit band: anything within 3 bits shares at least one band.
+     * Wider distances could be missed, which is why the configured maximum is at most 3.
+     */
+    private class BandIndex {
+        private val bands = List(SimHash.BANDS) { HashMap<Int, MutableList<Signature>>() }
+
+        fun add(signature: Signature) {
+            bands.forEachIndexed { band, buckets ->
+                buckets.getOrPut(SimHash.band(signature.simhash, band)) { mutableListOf() } += signature
+            }
+        }
+
+        fun nearest(simhash: Long, maxDistance: Int): Signature? =
+            bands.flatMapIndexed { band, buckets -> buckets[SimHash.band(simhash, band)].orEmpty() }
+                .map { it to SimHash.distance(it.simhash, simhash) }
+                .filter { (_, distance) -> distance <= maxDistance }
+                .minByOrNull { (_, distance) -> distance }
+                ?.first
+    }
+
+    private fun restoreOrphans(): Int {
+        val cypher = """
+            MATCH (d:Chunk)
+            WHERE d.duplicateEmbedding IS NOT NULL AND NOT (d)-[:DUPLICATE_OF]->(:Chunk)
+            SET d.embedding = d.duplicateEmbedding
+            REMOVE d.duplicateEmbedding, d.simhash
+            RETURN {restored: count(d)}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        val row = manager.getOne(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(emptyMap<String, Any>())
+                .transform(Map::class.java)
+        ) as Map<String, Any?>
+        return (row["restored"] as Number).toInt()
+    }
+
+    private fun canonicalSignatures(minChunkLength: Int): List<Signature> {
+        val cypher = """
+            MATCH (c:Chunk)
+            WHERE c.simhash IS NOT NULL AND c.embedding IS NOT NULL AND size(c.text) >= ${'$'}minChunkLength
+            RETURN {id: c.id, simhash: c.simhash}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("minChunkLength" to minChunkLength))
+                .transform(Map::class.java)
+        ).map { row ->
+            val chunk = row as Map<String, Any?>
+            Signature(chunk["id"] as String, (chunk["simhash"] as Number).toLong())
+        }
+    }
+
+    private fun unsignedChunks(): List<Pair<String, String>> {
+        val cypher = """
+            MATCH (c:Chunk)
+            WHERE c.simhash IS NULL AND c.text IS NOT NULL AND c.embedding IS NOT NULL
+            RETURN {id: c.id, text: c.text}
+            """
+
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(emptyMap<String, Any>())
+                .transform(Map::class.java)
+        ).map { row ->
+            val chunk = row as Map<String, Any?>
+            chunk["id"] as String to chunk["text"] as String
+        }
+    }
+
+    private fun saveSignatures(signatures: List<Map<String, Any>>) {
+        if (signatures.isEmpty()) {
+            return
+        }
+        val cypher = """
+            UNWIND ${'$'}signatures AS s
+            MATCH (c:Chunk {id: s.id})
+            SET c.simhash = s.simhash
+            """
+
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("signatures" to signatures))
+        )
+    }
+
+    private fun linkDuplicates(duplicates: List<Map<String, Any>>) {
+        if (duplicates.isEmpty()) {
+            return
+        }
+        val cypher = """
+            UNWIND ${'$'}duplicates AS d
+            MATCH (dup:Chunk {id: d.id}), (canonical:Chunk {id: d.canonical})
+            MERGE (dup)-[:DUPLICATE_OF]->(canonical)
+            SET dup.duplicateEmbedding = dup.embedding
+            REMOVE dup.embedding
+            """
+
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("duplicates" to duplicates))
+        )
+    }
+}
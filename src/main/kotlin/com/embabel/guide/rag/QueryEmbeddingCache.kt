@@ -0,0 +1,47 @@
+package com.embabel.guide.rag
+
+import com.embabel.common.ai.model.EmbeddingService
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+
+/**
+ * EmbeddingService decorator that keeps the embeddings of recent single-text calls, as made
+ * for search queries, in memory. Repeated queries, including those sent by many MCP clients
+ * and hypothetical documents generated for HyDE, then skip a round trip to the embedding API.
+ *
+ * Vectors are held as primitive float arrays, keyed by normalized text, and the least
+ * valuable entries are evicted once the cache is full. Multi-text calls, as made for chunks,
+ * pass straight through. A maximum of 0 entries disables the cache.
+ *
+ * The embedding call is made outside the cache, so a slow call holds up no other query.
+ * Concurrent identical queries may each be embedded before the first is cached.
+ */
+class QueryEmbeddingCache(
+    private val delegate: EmbeddingService,
+    maxEntries: Long,
+) : EmbeddingService by delegate {
+
+    private val vectors: Cache<String, FloatArray>? = if (maxEntries > 0) {
+        Caffeine.newBuilder()
+            .maximumSize(maxEntries)
+            .recordStats()
+            .build()
+    } else {
+        null
+    }
+
+    override fun embed(text: String): FloatArray {
+        if (vectors == null) {
+            return delegate.embed(text)
+        }
+        val key = CachingEmbeddingService.normalize(text)
+        val vector = vectors.getIfPresent(key) ?: delegate.embed(text).also { vectors.put(key, it.copyOf()) }
+        // Callers must not be able to change the cached vector
+        return vector.copyOf()
+    }
+
+    /**
+     * Fraction of queries served from the cache since startup
+     */
+    fun hitRatio(): Double = vectors?.stats()?.hitRate() ?: 0.0
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide
+
+import com.embabel.chat.AssistantMessage
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import reactor.core.publisher.Flux
+
+class ChatActionsTest {
+
+    @Test
+    fun `streamed response should forward each piece and return them joined`() {
+        // Given
+        val deltas = mutableListOf<String>()
+
+        // When
+        val message = ChatActions.streamed(
+            Flux.just("Agents ", "plan ", "with ", "GOAP."),
+            { deltas += it },
+            { AssistantMessage("fallback") }
+        )
+
+        // Then
+        assertEquals(listOf("Agents ", "plan ", "with ", "GOAP."), deltas)
+        assertEquals("Agents plan with GOAP.", message.content)
+    }
+
+    @Test
+    fun `streamed response should fall back to a single call when the stream fails before any piece`() {
+        // Given
+        val deltas = mutableListOf<String>()
+
+        // When
+        val message = ChatActions.streamed(
+            Flux.error(IllegalStateException("streaming not supported")),
+            { deltas += it },
+            { AssistantMessage("Complete answer") }
+        )
+
+        // Then
+        assertTrue(deltas.isEmpty())
+        assertEquals("Complete answer", message.content)
+    }
+
+    @Test
+    fun `streamed response should fail rather than fall back once a piece has been sent`() {
+        // Given
+        val deltas = mutableListOf<String>()
+        var fellBack = false
+
+        // When
+        val e = assertThrows<IllegalStateException> {
+            ChatActions.streamed(
+                Flux.concat(Flux.just("Partial "), Flux.error(IllegalStateException("connection reset"))),
+                { deltas += it },
+                { fellBack = true; AssistantMessage("Complete answer") }
+            )
+        }
+
+        // Then
+        assertEquals("connection reset", e.message)
+        assertEquals(listOf("Partial "), deltas)
+        assertFalse(fellBack)
+    }
+}
@@ -33,6 +33,8 @@ import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.Primary
 import org.springframework.context.annotation.Profile
 import java.util.LinkedList
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.sqrt
 import kotlin.random.Random
 
 /**
@@ -106,3 +108,57 @@ class FakeEmbeddingModel(
 
     override fun dimensions(): Int = dimensions
 }
+
+/**
+ * An EmbeddingModel whose vectors depend only on the text, for benchmarks that compare
+ * search results with exact nearest neighbours.
+ * Each word maps to a fixed random direction and a text embeds as the normalized sum of
+ * its words, so texts sharing words are similar, much as with a real model.
+ */
+class DeterministicEmbeddingModel(
+    private val dimensions: Int = 1536,
+) : EmbeddingModel {
+
+    private val wordVectors = ConcurrentHashMap<String, FloatArray>()
+
+    fun embed(text: String): FloatArray {
+        val vector = FloatArray(dimensions)
+        text.lowercase().split(WORD_SEPARATOR).filter { it.isNotEmpty() }.forEach { word ->
+            val wordVector = wordVectors.computeIfAbsent(word) {
+                val random = java.util.Random(it.hashCode().toLong())
+                FloatArray(dimensions) { random.nextGaussian().toFloat() }
+            }
+            for (i in vector.indices) {
+                vector[i] += wordVector[i]
+            }
+        }
+        val norm = sqrt(vector.sumOf { (it * it).toDouble() }).toFloat()
+        if (norm > 0f) {
+            for (i in vector.indices) {
+                vector[i] /= norm
+            }
+        }
+        return vector
+    }
+
+    override fun embed(document: Document): FloatArray = embed(document.text ?: "")
+
+    override fun embed(texts: List<String>): MutableList<FloatArray> = texts.map { embed(it) }.toMutableList()
+
+    override fun call(request: EmbeddingRequest): EmbeddingResponse =
+        EmbeddingResponse(request.instructions.mapIndexed { i, text -> Embedding(embed(text), i) })
+
+    override fun dimensions(): Int = dimensions
+
+    companion object {
+
+        private val WORD_SEPARATOR = Regex("[^\\p{L}\\p{Nd}]+")
+
+        @JvmStatic
+        fun service(dimensions: Int): EmbeddingService = SpringAiEmbeddingService(
+            name = "deterministic",
+            model = DeterministicEmbeddingModel(dimensions),
+            provider = "test"
+        )
+    }
+}
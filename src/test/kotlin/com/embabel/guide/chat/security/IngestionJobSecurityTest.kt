@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.chat.security
+
+import com.embabel.guide.Neo4jPropertiesInitializer
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+/**
+ * Ingestion jobs reveal the URLs being ingested and can be cancelled,
+ * so their endpoints must not be open to anonymous clients.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@ContextConfiguration(initializers = [Neo4jPropertiesInitializer::class])
+class IngestionJobSecurityTest {
+
+    @Autowired
+    private lateinit var mockMvc: MockMvc
+
+    @Test
+    fun `job listing should require authentication`() {
+        assertDenied(mockMvc.perform(get("/api/v1/data/jobs")).andReturn().response.status)
+    }
+
+    @Test
+    fun `job status should require authentication`() {
+        assertDenied(mockMvc.perform(get("/api/v1/data/jobs/some-job")).andReturn().response.status)
+    }
+
+    @Test
+    fun `cancelling a job should require authentication`() {
+        assertDenied(mockMvc.perform(delete("/api/v1/data/jobs/some-job")).andReturn().response.status)
+    }
+
+    @Test
+    fun `ingesting a server directory should require authentication`() {
+        assertDenied(mockMvc.perform(post("/api/v1/data/ingest-directory").param("dir", "/tmp")).andReturn().response.status)
+    }
+
+    private fun assertDenied(httpStatus: Int) {
+        assert(httpStatus == 401 || httpStatus == 403) {
+            "Anonymous request returned $httpStatus but expected 401 or 403"
+        }
+    }
+}
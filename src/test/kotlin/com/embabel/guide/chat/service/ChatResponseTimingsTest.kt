@@ -0,0 +1,75 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.chat.service
+
+import com.embabel.guide.chat.service.ChatResponseTimings.Outcome
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.time.Duration
+
+class ChatResponseTimingsTest {
+
+    @Test
+    fun `latency should only count completed responses`() {
+        // Given
+        val timings = ChatResponseTimings()
+
+        // When
+        timings.record(Outcome.COMPLETED, Duration.ofMillis(100))
+        timings.record(Outcome.COMPLETED, Duration.ofMillis(300))
+        timings.record(Outcome.TIMED_OUT, Duration.ofMinutes(2))
+        timings.record(Outcome.FAILED, Duration.ofMillis(5))
+        val stats = timings.stats()
+
+        // Then
+        assertEquals(2, stats.completed)
+        assertEquals(1, stats.timedOut)
+        assertEquals(1, stats.failed)
+        assertEquals(0, stats.cancelled)
+        assertEquals(Duration.ofMillis(200), stats.average)
+        assertEquals(Duration.ofMillis(300), stats.max)
+    }
+
+    @Test
+    fun `stats should be zero before any response`() {
+        // When
+        val stats = ChatResponseTimings().stats()
+
+        // Then
+        assertEquals(0, stats.completed)
+        assertEquals(Duration.ZERO, stats.average)
+        assertEquals(Duration.ZERO, stats.p50)
+        assertEquals(Duration.ZERO, stats.p99)
+        assertEquals(Duration.ZERO, stats.max)
+    }
+
+    @Test
+    fun `percentiles should be within a bucket of the true latency`() {
+        // Given
+        val timings = ChatResponseTimings()
+
+        // When
+        repeat(98) { timings.record(Outcome.COMPLETED, Duration.ofMillis(100)) }
+        repeat(2) { timings.record(Outcome.COMPLETED, Duration.ofSeconds(20)) }
+        val stats = timings.stats()
+
+        // Then
+        assertTrue(stats.p50 >= Duration.ofMillis(100) && stats.p50 <= Duration.ofMillis(110), "p50 was ${stats.p50}")
+        assertEquals(Duration.ofSeconds(20), stats.p99, "Capped at the slowest response")
+        assertTrue(stats.average > stats.p50, "A few slow responses pull the mean above the median")
+    }
+}
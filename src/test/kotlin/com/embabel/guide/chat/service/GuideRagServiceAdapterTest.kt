@@ -0,0 +1,208 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.chat.service
+
+import com.embabel.agent.api.channel.MessageOutputChannelEvent
+import com.embabel.agent.api.channel.OutputChannel
+import com.embabel.chat.AssistantMessage
+import com.embabel.chat.ChatSession
+import com.embabel.chat.Chatbot
+import com.embabel.guide.GuideProperties
+import com.embabel.guide.chat.model.ResponseDeltaOutputChannelEvent
+import com.embabel.guide.domain.GuideUser
+import com.embabel.guide.domain.GuideUserRepository
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import java.time.Duration
+import java.util.Optional
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class GuideRagServiceAdapterTest {
+
+    private val timings = ChatResponseTimings()
+    private val sessionsCreated = AtomicInteger()
+
+    @Test
+    fun `should forward response deltas and return the complete response`() {
+        // Given
+        val reply = reply("Use @Action.")
+        val adapter = adapter { channel ->
+            channel.send(ResponseDeltaOutputChannelEvent(PROCESS_ID, "Use "))
+            channel.send(ResponseDeltaOutputChannelEvent(PROCESS_ID, "@Action."))
+            channel.send(reply)
+        }
+        val deltas = mutableListOf<String>()
+
+        // When
+        val response = runBlocking {
+            adapter.sendMessage(THREAD_ID, "How do I define an action?", USER_ID, onDelta = { deltas += it })
+        }
+
+        // Then
+        assertEquals(listOf("Use ", "@Action."), deltas)
+        assertEquals("Use @Action.", response)
+        assertEquals(1, timings.stats().completed)
+    }
+
+    @Test
+    fun `should stop waiting when the chatbot finishes without a response`() {
+        // Given
+        val adapter = adapter { }
+
+        // When
+        val response = runBlocking { adapter.sendMessage(THREAD_ID, "Hello", USER_ID) }
+
+        // Then
+        assertEquals(GuideRagServiceAdapter.DEFAULT_ERROR_MESSAGE, response)
+        assertEquals(1, timings.stats().failed)
+        assertEquals(0, timings.stats().timedOut)
+    }
+
+    @Test
+    fun `should interrupt processing when no response arrives in time`() {
+        // Given
+        val interrupted = CountDownLatch(1)
+        val adapter = adapter(chatProperties(responseTimeout = Duration.ofMillis(100))) {
+            sleepUntilInterrupted(interrupted)
+        }
+
+        // When
+        val response = runBlocking { adapter.sendMessage(THREAD_ID, "Hello", USER_ID) }
+
+        // Then
+        assertEquals(GuideRagServiceAdapter.DEFAULT_ERROR_MESSAGE, response)
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS))
+        assertEquals(1, timings.stats().timedOut)
+    }
+
+    @Test
+    fun `should interrupt processing when the caller is cancelled`() {
+        // Given
+        val started = CountDownLatch(1)
+        val interrupted = CountDownLatch(1)
+        val adapter = adapter {
+            started.countDown()
+            sleepUntilInterrupted(interrupted)
+        }
+
+        // When
+        runBlocking {
+            val request = launch(Dispatchers.Default) { adapter.sendMessage(THREAD_ID, "Hello", USER_ID) }
+            assertTrue(started.await(5, TimeUnit.SECONDS))
+            request.cancelAndJoin()
+        }
+
+        // Then
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS))
+        assertEquals(1, timings.stats().cancelled)
+    }
+
+    @Test
+    fun `should hold no more sessions than the limit`() {
+        // Given
+        val reply = reply("Hi")
+        val adapter = adapter(chatProperties(maxSessions = 2)) { it.send(reply) }
+
+        // When
+        runBlocking {
+            listOf("a", "b", "c").forEach { adapter.sendMessage(it, "Hello", USER_ID) }
+        }
+        val stats = adapter.sessionStats()
+
+        // Then
+        assertEquals(3, sessionsCreated.get())
+        assertEquals(2, stats.size)
+        assertEquals(1, stats.evictions)
+    }
+
+    @Test
+    fun `should reuse a thread's session and restore it once evicted for idleness`() {
+        // Given
+        val reply = reply("Hi")
+        val adapter = adapter(chatProperties(sessionIdleTimeout = Duration.ofMillis(500))) { it.send(reply) }
+
+        // When
+        runBlocking {
+            adapter.sendMessage(THREAD_ID, "Hello", USER_ID)
+            adapter.sendMessage(THREAD_ID, "Hello again", USER_ID)
+            delay(1000)
+            adapter.sendMessage(THREAD_ID, "Still there?", USER_ID)
+        }
+        val stats = adapter.sessionStats()
+
+        // Then
+        assertEquals(2, sessionsCreated.get())
+        assertEquals(1, stats.hits)
+        assertEquals(2, stats.misses)
+    }
+
+    /**
+     * An adapter whose chatbot sessions call respond with their output channel for each user message
+     */
+    private fun adapter(
+        chat: GuideProperties.Chat = chatProperties(),
+        respond: (OutputChannel) -> Unit,
+    ): GuideRagServiceAdapter {
+        val chatbot = mock(Chatbot::class.java) { createSession ->
+            sessionsCreated.incrementAndGet()
+            val channel = createSession.getArgument<OutputChannel>(1)
+            mock(ChatSession::class.java) { invocation ->
+                if (invocation.method.name == "onUserMessage") respond(channel)
+                null
+            }
+        }
+        val guideUserRepository = mock(GuideUserRepository::class.java)
+        `when`(guideUserRepository.findById(USER_ID)).thenReturn(Optional.of(mock(GuideUser::class.java)))
+        val guideProperties = mock(GuideProperties::class.java)
+        `when`(guideProperties.chat()).thenReturn(chat)
+        return GuideRagServiceAdapter(chatbot, guideUserRepository, guideProperties, timings)
+    }
+
+    private fun chatProperties(
+        responseTimeout: Duration = Duration.ofSeconds(5),
+        maxSessions: Int = 10,
+        sessionIdleTimeout: Duration = Duration.ofMinutes(30),
+    ) = GuideProperties.Chat(true, responseTimeout, maxSessions, sessionIdleTimeout)
+
+    private fun sleepUntilInterrupted(interrupted: CountDownLatch) {
+        try {
+            Thread.sleep(Duration.ofMinutes(1))
+        } catch (e: InterruptedException) {
+            interrupted.countDown()
+        }
+    }
+
+    private fun reply(text: String): MessageOutputChannelEvent =
+        mock(MessageOutputChannelEvent::class.java).also {
+            `when`(it.message).thenReturn(AssistantMessage(text))
+        }
+
+    companion object {
+        private const val PROCESS_ID = "process"
+        private const val THREAD_ID = "thread"
+        private const val USER_ID = "user"
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.common.ai.model.SpringAiEmbeddingService
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.document.Document
+import org.springframework.ai.embedding.Embedding
+import org.springframework.ai.embedding.EmbeddingModel
+import org.springframework.ai.embedding.EmbeddingRequest
+import org.springframework.ai.embedding.EmbeddingResponse
+import org.springframework.ai.retry.NonTransientAiException
+import org.springframework.ai.retry.RetryUtils
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.client.MockClientHttpResponse
+import org.springframework.web.client.HttpClientErrorException
+import java.net.URI
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class BatchingEmbeddingServiceTest {
+
+    @Test
+    fun `concurrent calls should be coalesced and return the same vectors as unbatched calls`() {
+        // Given
+        val model = CountingEmbeddingModel()
+        val service = batching(model, maxBatchSize = 1000, linger = Duration.ofMillis(100))
+        val callers = (1..8).map { caller -> (1..10).map { "caller $caller text $it" } }
+
+        // When
+        val pool = Executors.newFixedThreadPool(callers.size)
+        val results = pool.invokeAll(callers.map { texts -> Callable { service.embed(texts) } }).map { it.get() }
+        pool.shutdown()
+
+        // Then
+        assertTrue(model.calls.get() < callers.size, "expected fewer model calls than callers, got ${model.calls.get()}")
+        callers.zip(results).forEach { (texts, vectors) ->
+            assertEquals(texts.size, vectors.size)
+            texts.zip(vectors).forEach { (text, vector) -> assertArrayEquals(vectorFor(text), vector) }
+        }
+    }
+
+    @Test
+    fun `batches should be bounded by count`() {
+        // Given
+        val model = CountingEmbeddingModel()
+        val service = batching(model, maxBatchSize = 10)
+
+        // When
+        val vectors = service.embed((1..25).map { "text $it" })
+
+        // Then
+        assertEquals(25, vectors.size)
+        assertEquals(3, model.calls.get())
+    }
+
+    @Test
+    fun `batches should be bounded by estimated tokens`() {
+        // Given
+        val model = CountingEmbeddingModel()
+        val text = "x".repeat(400)
+        val service = batching(model, maxBatchTokens = BatchingEmbeddingService.estimateTokens(text) * 2)
+
+        // When
+        service.embed(List(6) { text })
+
+        // Then
+        assertEquals(3, model.calls.get())
+    }
+
+    @Test
+    fun `rate limited batches should be retried`() {
+        // Given
+        val model = CountingEmbeddingModel(failures = 2, failure = { tooManyRequests() })
+        val service = batching(model)
+
+        // When
+        val vectors = service.embed(listOf("a", "b"))
+
+        // Then
+        assertEquals(2, vectors.size)
+        assertEquals(3, model.calls.get())
+    }
+
+    @Test
+    fun `batches rate limited through Spring AI's client error handling should be retried`() {
+        // Given
+        val model = CountingEmbeddingModel(failures = 2, failure = { springAiError(HttpStatus.TOO_MANY_REQUESTS) })
+        val service = batching(model)
+
+        // When
+        val vectors = service.embed(listOf("a", "b"))
+
+        // Then
+        assertEquals(2, vectors.size)
+        assertEquals(3, model.calls.get())
+    }
+
+    @Test
+    fun `other client errors reported by Spring AI should propagate without retry`() {
+        // Given
+        val model = CountingEmbeddingModel(failures = 1, failure = { springAiError(HttpStatus.BAD_REQUEST) })
+        val service = batching(model)
+
+        // When & Then
+        assertThrows(NonTransientAiException::class.java) { service.embed(listOf("a")) }
+        assertEquals(1, model.calls.get())
+    }
+
+    @Test
+    fun `other failures should propagate without retry`() {
+        // Given
+        val model = CountingEmbeddingModel(failures = 1, failure = { IllegalStateException("bad input") })
+        val service = batching(model)
+
+        // When & Then
+        val exception = assertThrows(IllegalStateException::class.java) {
+            service.embed(listOf("a"))
+        }
+        assertEquals("bad input", exception.message)
+        assertEquals(1, model.calls.get())
+    }
+
+    @Test
+    fun `messages mentioning 429 should not be mistaken for rate limits`() {
+        // Given
+        val model = CountingEmbeddingModel(failures = 1, failure = { IllegalArgumentException("input has 4290 tokens") })
+        val service = batching(model)
+
+        // When & Then
+        assertThrows(IllegalArgumentException::class.java) { service.embed(listOf("a")) }
+        assertEquals(1, model.calls.get())
+    }
+
+    @Test
+    fun `the rest of a failed request should not be embedded`() {
+        // Given
+        val model = CountingEmbeddingModel(failures = 1, failure = { IllegalStateException("bad input") })
+        val service = batching(model, maxBatchSize = 2)
+        assertThrows(IllegalStateException::class.java) { service.embed((1..5).map { "text $it" }) }
+
+        // When
+        val vectors = service.embed(listOf("x", "y"))
+
+        // Then
+        assertEquals(2, vectors.size)
+        assertEquals(2, model.calls.get())
+    }
+
+    @Test
+    fun `calls should be spaced by the rate limit`() {
+        // Given
+        val model = CountingEmbeddingModel()
+        val service = batching(model, maxBatchSize = 10, maxCallsPerMinute = 600)
+
+        // When
+        val start = System.nanoTime()
+        service.embed((1..25).map { "text $it" })
+        val elapsed = Duration.ofNanos(System.nanoTime() - start)
+
+        // Then
+        assertEquals(3, model.calls.get())
+        assertTrue(elapsed >= Duration.ofMillis(200), "expected calls 100 ms apart, took ${elapsed.toMillis()} ms")
+    }
+
+    private fun batching(
+        model: EmbeddingModel,
+        maxBatchSize: Int = 100,
+        maxBatchTokens: Int = 100_000,
+        linger: Duration = Duration.ZERO,
+        maxCallsPerMinute: Int = 0,
+    ) = BatchingEmbeddingService(
+        delegate = SpringAiEmbeddingService(name = "test", model = model, provider = "test"),
+        maxBatchSize = maxBatchSize,
+        maxBatchTokens = maxBatchTokens,
+        linger = linger,
+        maxRetries = 3,
+        initialBackoff = Duration.ofMillis(1),
+        maxCallsPerMinute = maxCallsPerMinute,
+    )
+}
+
+private fun tooManyRequests(): Exception =
+    HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", HttpHeaders.EMPTY, ByteArray(0), null)
+
+/**
+ * The exception Spring AI's model clients, such as OpenAI's, throw for an HTTP error response
+ */
+private fun springAiError(status: HttpStatus): Exception {
+    val body = """{"error": {"message": "${status.reasonPhrase}"}}"""
+    val response = MockClientHttpResponse(body.toByteArray(), status)
+    return runCatching {
+        RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER.handleError(
+            URI.create("https://api.openai.com/v1/embeddings"), HttpMethod.POST, response
+        )
+    }.exceptionOrNull() as? Exception ?: error("No exception for HTTP $status")
+}
+
+private fun vectorFor(text: String): FloatArray = FloatArray(4) { i -> (text.hashCode() xor i).toFloat() }
+
+/**
+ * Deterministic embedding model that counts calls and can fail the first few
+ */
+private class CountingEmbeddingModel(
+    private val failures: Int = 0,
+    private val failure: () -> Exception = { RuntimeException("failure") },
+) : EmbeddingModel {
+
+    val calls = AtomicInteger()
+
+    override fun embed(document: Document): FloatArray = vectorFor(document.id)
+
+    override fun embed(texts: List<String>): MutableList<FloatArray> {
+        if (calls.incrementAndGet() <= failures) {
+            throw failure()
+        }
+        return texts.map { vectorFor(it) }.toMutableList()
+    }
+
+    override fun call(request: EmbeddingRequest): EmbeddingResponse =
+        EmbeddingResponse(embed(request.instructions).mapIndexed { i, vector -> Embedding(vector, i) })
+
+    override fun dimensions(): Int = 4
+}
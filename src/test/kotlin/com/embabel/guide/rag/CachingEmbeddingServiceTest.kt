@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.common.ai.model.SpringAiEmbeddingService
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.document.Document
+import org.springframework.ai.embedding.Embedding
+import org.springframework.ai.embedding.EmbeddingModel
+import org.springframework.ai.embedding.EmbeddingRequest
+import org.springframework.ai.embedding.EmbeddingResponse
+import java.util.concurrent.ConcurrentHashMap
+
+class CachingEmbeddingServiceTest {
+
+    @Test
+    fun `unchanged texts should not be re-embedded`() {
+        // Given
+        val model = RecordingEmbeddingModel()
+        val service = caching(model, InMemoryEmbeddingCache())
+        service.embed(listOf("alpha", "beta"))
+
+        // When
+        val vectors = service.embed(listOf("alpha", "beta", "gamma"))
+
+        // Then
+        assertEquals(listOf(listOf("alpha", "beta"), listOf("gamma")), model.requests)
+        listOf("alpha", "beta", "gamma").zip(vectors).forEach { (text, vector) ->
+            assertArrayEquals(embeddingOf(text), vector)
+        }
+        assertEquals(0.4, service.hitRatio(), 0.001)
+    }
+
+    @Test
+    fun `whitespace differences should not defeat the cache`() {
+        // Given
+        val model = RecordingEmbeddingModel()
+        val service = caching(model, InMemoryEmbeddingCache())
+        service.embed(listOf("some  text\n"))
+
+        // When
+        service.embed(listOf(" some text"))
+
+        // Then
+        assertEquals(1, model.requests.size)
+    }
+
+    @Test
+    fun `duplicate texts within a call should be embedded once`() {
+        // Given
+        val model = RecordingEmbeddingModel()
+        val service = caching(model, InMemoryEmbeddingCache())
+
+        // When
+        val vectors = service.embed(listOf("same", "other", "same"))
+
+        // Then
+        assertEquals(listOf(listOf("same", "other")), model.requests)
+        assertEquals(3, vectors.size)
+        assertArrayEquals(vectors[0], vectors[2])
+    }
+
+    @Test
+    fun `cache failures should fall back to the delegate`() {
+        // Given
+        val model = RecordingEmbeddingModel()
+        val service = caching(model, object : EmbeddingCache {
+            override fun getAll(keys: Collection<String>): Map<String, FloatArray> =
+                throw IllegalStateException("database unavailable")
+
+            override fun putAll(embeddings: Map<String, FloatArray>, model: String) =
+                throw IllegalStateException("database unavailable")
+        })
+
+        // When
+        val vectors = service.embed(listOf("alpha"))
+
+        // Then
+        assertArrayEquals(embeddingOf("alpha"), vectors.single())
+    }
+
+    private fun caching(model: EmbeddingModel, cache: EmbeddingCache) = CachingEmbeddingService(
+        delegate = SpringAiEmbeddingService(name = "test", model = model, provider = "test"),
+        cache = cache,
+    )
+}
+
+private fun embeddingOf(text: String): FloatArray =
+    FloatArray(4) { i -> (CachingEmbeddingService.normalize(text).hashCode() xor i).toFloat() }
+
+private class InMemoryEmbeddingCache : EmbeddingCache {
+
+    private val entries = ConcurrentHashMap<String, FloatArray>()
+
+    override fun getAll(keys: Collection<String>): Map<String, FloatArray> =
+        keys.mapNotNull { key -> entries[key]?.let { key to it } }.toMap()
+
+    override fun putAll(embeddings: Map<String, FloatArray>, model: String) {
+        entries.putAll(embeddings)
+    }
+}
+
+/**
+ * Deterministic embedding model that records the texts of each call
+ */
+private class RecordingEmbeddingModel : EmbeddingModel {
+
+    val requests = mutableListOf<List<String>>()
+
+    override fun embed(document: Document): FloatArray = embeddingOf(document.id)
+
+    override fun embed(texts: List<String>): MutableList<FloatArray> {
+        requests += texts
+        return texts.map { embeddingOf(it) }.toMutableList()
+    }
+
+    override fun call(request: EmbeddingRequest): EmbeddingResponse =
+        EmbeddingResponse(embed(request.instructions).mapIndexed { i, vector -> Embedding(vector, i) })
+
+    override fun dimensions(): Int = 4
+}
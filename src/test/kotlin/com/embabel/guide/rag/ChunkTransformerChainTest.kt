@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.GuideProperties
+import com.embabel.guide.GuideProperties.ChunkTransformation.Stage
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class ChunkTransformerChainTest {
+
+    @Test
+    fun `rewriters should run in order and enrichers should add metadata`() {
+        // Given
+        val chain = chain(Stage.NORMALIZE_WHITESPACE, Stage.TITLE_PREFIX, Stage.CODE_BLOCKS, Stage.KEYWORDS)
+        val text = "Agents   use actions.\n\n\n\nActions run goals.\n```java\nclass  Agent {}\n```\nAgents plan actions."
+
+        // When
+        val result = chain.apply(ChunkDraft(text, "Agents", mapOf("source" to "guide")))
+
+        // Then
+        assertEquals(
+            "Agents\n\nAgents use actions.\n\nActions run goals.\n```java\nclass  Agent {}\n```\nAgents plan actions.",
+            result.text
+        )
+        assertEquals("guide", result.metadata["source"])
+        assertEquals(true, result.metadata["has_code"])
+        assertEquals(listOf("java"), result.metadata["code_languages"])
+        assertEquals(listOf("actions", "agents"), (result.metadata["keywords"] as List<*>).take(2))
+    }
+
+    @Test
+    fun `title prefix should not be repeated`() {
+        val result = chain(Stage.TITLE_PREFIX).apply(ChunkDraft("Agents\n\nAgents use actions.", "Agents"))
+
+        assertEquals("Agents\n\nAgents use actions.", result.text)
+    }
+
+    @Test
+    fun `empty chain should leave the chunk unchanged`() {
+        val draft = ChunkDraft("  text  ", "Title", mapOf("a" to 1))
+
+        assertEquals(draft, chain().apply(draft))
+    }
+
+    @Test
+    fun `enrichers should run on the calling thread`() {
+        // Given
+        val threads = mutableListOf<Thread>()
+        val enricher = ChunkStage.Enricher { threads += Thread.currentThread(); emptyMap() }
+
+        // When
+        ChunkTransformerChain(listOf(enricher, enricher)).apply(ChunkDraft("text", null))
+
+        // Then
+        assertEquals(listOf(Thread.currentThread(), Thread.currentThread()), threads)
+    }
+
+    @Test
+    fun `timings should be recorded per stage`() {
+        // Given
+        val chain = chain(Stage.NORMALIZE_WHITESPACE, Stage.KEYWORDS)
+
+        // When
+        repeat(3) { chain.apply(ChunkDraft("some text here", null)) }
+
+        // Then
+        val timings = chain.timings().associateBy { it.stage }
+        assertEquals(setOf("NormalizeWhitespace", "Keywords"), timings.keys)
+        assertTrue(timings.values.all { it.chunks == 3L })
+    }
+
+    private fun chain(vararg stages: Stage) =
+        ChunkTransformerChain.from(GuideProperties.ChunkTransformation(stages.toList(), 5))
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.DeterministicEmbeddingModel
+import com.embabel.guide.GuideProperties
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ChunkVectorIndexTest {
+
+    private val embeddingService = DeterministicEmbeddingModel.service(DIMENSIONS)
+
+    /**
+     * Chunks in the store, by id
+     */
+    private val stored = ConcurrentHashMap<String, ChunkEmbeddings.StoredChunk>()
+
+    @Volatile
+    private var failure: RuntimeException? = null
+
+    private val failedSyncs = CountDownLatch(1)
+
+    private val index = ChunkVectorIndex(
+        guideProperties(),
+        chunkEmbeddings(),
+        QueryEmbeddingCache(embeddingService, 0),
+    )
+
+    @AfterEach
+    fun shutdown() {
+        index.shutdown()
+    }
+
+    @Test
+    fun `chunks added after the first sync should be searchable after the next`() {
+        // Given
+        store("agents", "Agents plan actions to reach goals")
+        store("tools", "Tools are functions the model can call")
+        syncAndWait()
+
+        // When
+        store("prompts", "Prompt templates are rendered with Jinja")
+        syncAndWait()
+
+        // Then
+        assertEquals(3, index.stats().chunks)
+        assertEquals(0, index.stats().deleted, "Added without a rebuild or deletion")
+        assertEquals("prompts", index.search("Prompt templates are rendered with Jinja", 1).single().id)
+    }
+
+    @Test
+    fun `removed chunks should stay in the graph until a quarter of it is deleted`() {
+        // Given
+        (1..8).forEach { store("chunk-$it", "Passage number $it about topic $it") }
+        syncAndWait()
+
+        // When
+        stored.remove("chunk-1")
+        syncAndWait()
+
+        // Then
+        assertEquals(7, index.stats().chunks)
+        assertEquals(1, index.stats().deleted, "Marked deleted rather than rebuilt")
+        assertTrue(index.search("Passage number 1 about topic 1", 8).none { it.id == "chunk-1" })
+
+        // When
+        stored.remove("chunk-2")
+        stored.remove("chunk-3")
+        syncAndWait()
+
+        // Then
+        assertEquals(5, index.stats().chunks)
+        assertEquals(0, index.stats().deleted, "Rebuilt once more than a quarter would be deleted")
+    }
+
+    @Test
+    fun `a failed sync should leave the index not ready until a later sync succeeds`() {
+        // Given
+        store("agents", "Agents plan actions to reach goals")
+        syncAndWait()
+        failure = IllegalStateException("Neo4j unavailable")
+
+        // When
+        index.onContentIngested(ContentIngestedEvent("test", 1))
+        assertTrue(failedSyncs.await(10, TimeUnit.SECONDS))
+
+        // Then
+        assertFalse(index.isReady(), "Searches should go to Neo4j")
+
+        // When
+        failure = null
+        store("tools", "Tools are functions the model can call")
+        syncAndWait()
+
+        // Then
+        assertEquals(2, index.stats().chunks)
+    }
+
+    @Test
+    fun `a re-embedded chunk should replace its node`() {
+        // Given
+        store("agents", "Agents plan actions to reach goals")
+        // Enough others that replacing one node doesn't trigger a rebuild
+        (1..7).forEach { store("chunk-$it", "Passage number $it about topic $it") }
+        syncAndWait()
+
+        // When
+        store("agents", "Goal oriented action planning chooses the next step")
+        syncAndWait()
+
+        // Then
+        assertEquals(8, index.stats().chunks)
+        assertEquals(1, index.stats().deleted, "The old node should be deleted")
+        val match = index.search("Goal oriented action planning chooses the next step", 1).single()
+        assertEquals("agents", match.id)
+        assertEquals("Goal oriented action planning chooses the next step", match.text)
+        assertEquals(1.0, match.score, 1e-4)
+    }
+
+    /**
+     * Write a chunk, with a new embedding version as when its node is written by the store
+     */
+    private fun store(id: String, text: String) {
+        stored[id] = ChunkEmbeddings.StoredChunk(id, text, embeddingService.embed(text), UUID.randomUUID().toString())
+    }
+
+    private fun syncAndWait() {
+        index.onContentIngested(ContentIngestedEvent("test", 1))
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+        while (!index.isReady()) {
+            assertTrue(System.nanoTime() < deadline, "Sync did not finish")
+            Thread.sleep(10)
+        }
+    }
+
+    private fun chunkEmbeddings(): ChunkEmbeddings = mock(ChunkEmbeddings::class.java) { invocation ->
+        when (invocation.method.name) {
+            "versions" -> failure?.let {
+                failedSyncs.countDown()
+                throw it
+            } ?: stored.mapValues { it.value.version }
+
+            "byIds" -> invocation.getArgument<Collection<String>>(0).mapNotNull { stored[it] }
+            else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+        }
+    }
+
+    private fun guideProperties(): GuideProperties {
+        val guideProperties = mock(GuideProperties::class.java)
+        `when`(guideProperties.vectorIndex()).thenReturn(
+            GuideProperties.VectorIndex(true, 16, 100, 64, GuideProperties.VectorIndex.Quantization.NONE, 4)
+        )
+        return guideProperties
+    }
+
+    companion object {
+        private const val DIMENSIONS = 64
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class CodeAwareMarkdownSplitterTest {
+
+    private val markdown = """
+        # Agents
+
+        Agents are built from actions and goals. This paragraph explains them.
+
+        Another paragraph about planning.
+
+        ## Example
+
+        ```java
+        public class Agent {
+
+            @Action
+            public Plan plan(Goal goal) {
+                return planner.plan(goal);
+            }
+
+            public void run() {
+                var x = 1;
+
+                doSomething(x);
+            }
+        }
+        ```
+        """.trimIndent()
+
+    @Test
+    fun `content within budget should keep its structure`() {
+        val split = CodeAwareMarkdownSplitter(1000).split(markdown)
+
+        assertFalse(split.contains("(continued)"))
+        assertEquals(markdown.trim(), split.trim())
+    }
+
+    @Test
+    fun `oversized sections should continue under repeated headings`() {
+        val split = CodeAwareMarkdownSplitter(20).split(markdown)
+
+        assertTrue(split.contains("# Agents (continued)\n\nAnother paragraph about planning."))
+    }
+
+    @Test
+    fun `large code blocks should be split between methods, never inside one`() {
+        val split = CodeAwareMarkdownSplitter(20).split(markdown)
+
+        val fences = Regex("```java\n(.*?)\n```", RegexOption.DOT_MATCHES_ALL).findAll(split).map { it.groupValues[1] }.toList()
+        assertEquals(2, fences.size)
+        assertTrue(fences[0].trimEnd().endsWith("return planner.plan(goal);\n    }"))
+        assertTrue(fences[1].trimStart().startsWith("public void run() {"))
+        assertTrue(fences[1].contains("var x = 1;\n\n        doSomething(x);"))
+        assertTrue(split.contains("## Example (continued)"))
+    }
+
+    @Test
+    fun `unterminated fences should be left alone`() {
+        val text = "# Code\n\n```java\n" + "int x = 1;\n\n".repeat(50)
+
+        val split = CodeAwareMarkdownSplitter(20).split(text)
+
+        assertEquals(1, Regex("```").findAll(split).count())
+    }
+
+    @Test
+    fun `Markdown should be recognized wherever it comes from`() {
+        assertTrue(CodeAwareMarkdownSplitter.isMarkdown("file:///docs/guide/agents.md"))
+        assertTrue(CodeAwareMarkdownSplitter.isMarkdown("https://raw.githubusercontent.com/embabel/guide/main/README.MD"))
+        assertTrue(CodeAwareMarkdownSplitter.isMarkdown("https://docs.embabel.com/guide/tools.markdown?plain=1#usage"))
+        assertFalse(CodeAwareMarkdownSplitter.isMarkdown("https://docs.embabel.com/guide/index.html"))
+        assertFalse(CodeAwareMarkdownSplitter.isMarkdown("https://docs.embabel.com/v1.md/index"))
+        assertFalse(CodeAwareMarkdownSplitter.isMarkdown("https://docs.embabel.com"))
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.util.concurrent.CopyOnWriteArrayList
+
+class ConditionalFetcherTest {
+
+    private lateinit var server: HttpServer
+    private val requests = CopyOnWriteArrayList<Map<String, String?>>()
+    private val fetcher = ConditionalFetcher()
+
+    @BeforeEach
+    fun startServer() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/page") { exchange ->
+            val ifNoneMatch = exchange.requestHeaders.getFirst("If-None-Match")
+            requests += mapOf(
+                "If-None-Match" to ifNoneMatch,
+                "If-Modified-Since" to exchange.requestHeaders.getFirst("If-Modified-Since"),
+            )
+            if (ifNoneMatch == ETAG) {
+                exchange.sendResponseHeaders(304, -1)
+            } else {
+                val body = "<html><h1>Guide</h1></html>".toByteArray()
+                exchange.responseHeaders.add("ETag", ETAG)
+                exchange.responseHeaders.add("Last-Modified", LAST_MODIFIED)
+                exchange.sendResponseHeaders(200, body.size.toLong())
+                exchange.responseBody.use { it.write(body) }
+            }
+            exchange.close()
+        }
+        server.createContext("/missing") { exchange ->
+            exchange.sendResponseHeaders(404, -1)
+            exchange.close()
+        }
+        server.start()
+    }
+
+    @AfterEach
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    @Test
+    fun `first fetch should return the body and validators`() {
+        // When
+        val result = fetcher.fetch(url("/page"), ConditionalFetcher.Validators.NONE)
+
+        // Then
+        assertFalse(result.isNotModified)
+        assertEquals("<html><h1>Guide</h1></html>", result.body()!!.use { String(it.readAllBytes()) })
+        assertEquals(ConditionalFetcher.Validators(ETAG, LAST_MODIFIED), result.validators())
+        assertNull(requests.single()["If-None-Match"])
+    }
+
+    @Test
+    fun `refetch with validators should be not modified`() {
+        // Given
+        val validators = fetcher.fetch(url("/page"), ConditionalFetcher.Validators.NONE)
+            .also { it.body()!!.close() }
+            .validators()
+
+        // When
+        val result = fetcher.fetch(url("/page"), validators)
+
+        // Then
+        assertTrue(result.isNotModified)
+        assertEquals(validators, result.validators())
+        assertEquals(ETAG, requests.last()["If-None-Match"])
+        assertEquals(LAST_MODIFIED, requests.last()["If-Modified-Since"])
+    }
+
+    @Test
+    fun `error responses should fail`() {
+        val exception = assertThrows(IOException::class.java) {
+            fetcher.fetch(url("/missing"), ConditionalFetcher.Validators.NONE)
+        }
+        assertTrue(exception.message!!.contains("404"))
+    }
+
+    @Test
+    fun `only http urls should be supported`() {
+        assertTrue(ConditionalFetcher.supports("https://docs.embabel.com/"))
+        assertFalse(ConditionalFetcher.supports("file:///tmp/guide.md"))
+    }
+
+    private fun url(path: String) = "http://127.0.0.1:${server.address.port}$path"
+
+    companion object {
+        private const val ETAG = "\"v1\""
+        private const val LAST_MODIFIED = "Wed, 01 Oct 2025 10:00:00 GMT"
+    }
+}
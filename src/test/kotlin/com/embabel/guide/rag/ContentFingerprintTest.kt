@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class ContentFingerprintTest {
+
+    @Test
+    fun `identical content should be unchanged`() {
+        val before = ContentFingerprint.ofSections(listOf("Intro\nHello", "Usage\nRun it"))
+        val after = ContentFingerprint.ofSections(listOf("Intro\nHello", "Usage\nRun it"))
+
+        val diff = after.diff(before)
+
+        assertTrue(diff.isUnchanged)
+        assertEquals(2, diff.unchanged())
+    }
+
+    @Test
+    fun `edited section should count as one removal and one addition`() {
+        val before = ContentFingerprint.ofSections(listOf("Intro\nHello", "Usage\nRun it"))
+        val after = ContentFingerprint.ofSections(listOf("Intro\nHello", "Usage\nRun it twice", "FAQ\nNone yet"))
+
+        val diff = after.diff(before)
+
+        assertFalse(diff.isUnchanged)
+        assertEquals(2, diff.added())
+        assertEquals(1, diff.removed())
+        assertEquals(1, diff.unchanged())
+    }
+
+    @Test
+    fun `reordered sections should be changed`() {
+        val before = ContentFingerprint.ofSections(listOf("A\n1", "B\n2"))
+        val after = ContentFingerprint.ofSections(listOf("B\n2", "A\n1"))
+
+        assertFalse(after.diff(before).isUnchanged)
+    }
+
+    @Test
+    fun `content never written should be all additions`() {
+        val diff = ContentFingerprint.ofSections(listOf("A\n1", "B\n2")).diff(null)
+
+        assertEquals(2, diff.added())
+        assertFalse(diff.isUnchanged)
+    }
+
+    @Test
+    fun `content never written should be changed even without sections`() {
+        val diff = ContentFingerprint.ofSections(emptyList()).diff(null)
+
+        assertFalse(diff.isUnchanged)
+    }
+}
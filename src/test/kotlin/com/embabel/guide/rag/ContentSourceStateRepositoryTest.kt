@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.Neo4jPropertiesInitializer
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.mcp.client.common.autoconfigure.McpClientAutoConfiguration
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.transaction.annotation.Transactional
+
+@SpringBootTest
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = [Neo4jPropertiesInitializer::class])
+@ImportAutoConfiguration(exclude = [McpClientAutoConfiguration::class])
+@Transactional
+class ContentSourceStateRepositoryTest {
+
+    private val uri = "https://docs.example.com/guide/index.html"
+
+    private val fingerprint = ContentFingerprint.ofSections(listOf("Intro\nWelcome", "Agents\nAgents plan"))
+
+    @Autowired
+    private lateinit var repository: ContentSourceStateRepository
+
+    @Autowired
+    @Qualifier("neo")
+    private lateinit var manager: PersistenceManager
+
+    @Test
+    fun `fingerprint should be found while its content exists`() {
+        // Given
+        writeContent()
+
+        // When
+        repository.saveFingerprint(uri, fingerprint)
+
+        // Then
+        assertEquals(fingerprint, repository.findFingerprint(uri))
+        assertTrue(fingerprint.diff(repository.findFingerprint(uri)).isUnchanged)
+    }
+
+    @Test
+    fun `content reloaded after a wipe should not be taken as unchanged`() {
+        // Given
+        writeContent()
+        repository.saveFingerprint(uri, fingerprint)
+
+        // When
+        wipeContent()
+
+        // Then
+        assertNull(repository.findFingerprint(uri))
+        assertFalse(fingerprint.diff(repository.findFingerprint(uri)).isUnchanged)
+    }
+
+    @Test
+    fun `validators should not be sent once content is gone`() {
+        // Given
+        writeContent()
+        repository.saveValidators(uri, ConditionalFetcher.Validators("\"v1\"", "Wed, 21 Oct 2026 07:28:00 GMT"))
+        assertEquals("\"v1\"", repository.findValidators(uri).etag)
+
+        // When
+        wipeContent()
+
+        // Then
+        assertEquals(ConditionalFetcher.Validators.NONE, repository.findValidators(uri))
+    }
+
+    @Test
+    fun `state of deleted content should be deleted`() {
+        // Given
+        writeContent()
+        repository.saveFingerprint(uri, fingerprint)
+        repository.saveFingerprint("https://docs.example.com/never-written.html", fingerprint)
+
+        // When
+        val deleted = repository.deleteOrphans()
+
+        // Then
+        assertTrue(deleted >= 1)
+        assertEquals(listOf(uri), stateUris().filter { it.startsWith("https://docs.example.com/") })
+    }
+
+    private fun stateUris(): List<String> {
+        @Suppress("UNCHECKED_CAST")
+        return manager.query(
+            QuerySpecification
+                .withStatement("MATCH (s:ContentSourceState) RETURN {uri: s.uri}")
+                .bind(emptyMap<String, Any>())
+                .transform(Map::class.java)
+        ).map { (it as Map<String, Any?>)["uri"] as String }
+    }
+
+    private fun writeContent() = execute("CREATE (:ContentElement {id: randomUUID(), uri: ${'$'}uri})")
+
+    /**
+     * As documented in db/clean.cypher
+     */
+    private fun wipeContent() = execute("MATCH (c:ContentElement) DETACH DELETE c")
+
+    private fun execute(cypher: String) {
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("uri" to uri))
+        )
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.GuideProperties
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.net.InetSocketAddress
+import java.net.URI
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class DocsCrawlerTest {
+
+    private lateinit var server: HttpServer
+
+    private val requests = ConcurrentHashMap<String, AtomicInteger>()
+
+    private val pages = mapOf(
+        "/docs/index.html" to """
+            <a href="a.html">A</a>
+            <a href='b.html#usage'>B</a>
+            <a href="/docs/a.html">A again</a>
+            <a href="/other/c.html">Elsewhere</a>
+            <img src="logo.png"><a href="logo.png">Logo</a>
+            """,
+        "/docs/a.html" to """<a href="deep/d.html">D</a>""",
+        "/docs/b.html" to """<a href="index.html">Home</a> <a href="missing.html">Gone</a>""",
+        "/docs/deep/d.html" to """<p>No links</p>""",
+        "/other/c.html" to """<p>Outside the docs</p>""",
+    )
+
+    @BeforeEach
+    fun startServer() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            requests.computeIfAbsent(exchange.requestURI.path) { AtomicInteger() }.incrementAndGet()
+            val page = pages[exchange.requestURI.path]
+            if (page == null) {
+                exchange.sendResponseHeaders(404, -1)
+            } else {
+                val body = page.toByteArray()
+                exchange.responseHeaders.add("Content-Type", "text/html; charset=utf-8")
+                exchange.sendResponseHeaders(200, body.size.toLong())
+                exchange.responseBody.use { it.write(body) }
+            }
+            exchange.close()
+        }
+        server.start()
+    }
+
+    @AfterEach
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    @Test
+    fun `crawl should visit each page under the seed prefix once`() {
+        // When
+        val found = crawler(maxDepth = 3).crawl(url("/docs/index.html")) { false }.asSequence().map { it.url() }.toList()
+
+        // Then
+        assertEquals(
+            listOf("/docs/index.html", "/docs/a.html", "/docs/b.html", "/docs/deep/d.html").map { url(it) }.toSet(),
+            found.toSet()
+        )
+        assertEquals(found.size, found.toSet().size)
+    }
+
+    @Test
+    fun `crawl should stop at the maximum depth`() {
+        // When
+        val found = crawler(maxDepth = 1).crawl(url("/docs/index.html")) { false }.asSequence().map { it.url() }.toSet()
+
+        // Then
+        assertEquals(listOf("/docs/index.html", "/docs/a.html", "/docs/b.html").map { url(it) }.toSet(), found)
+    }
+
+    @Test
+    fun `crawl should stop at the maximum number of pages`() {
+        // When
+        val found = crawler(maxDepth = 3, maxPages = 2).crawl(url("/docs/index.html")) { false }.asSequence().toList()
+
+        // Then
+        assertEquals(2, found.size)
+    }
+
+    @Test
+    fun `pages should be downloaded once and returned with their bodies`() {
+        // When
+        val found = crawler(maxDepth = 1).crawl(url("/docs/index.html")) { false }.asSequence()
+            .associateBy { it.url() }
+
+        // Then
+        assertEquals(pages["/docs/index.html"], found.getValue(url("/docs/index.html")).body().decodeToString())
+        assertEquals(1, requests.getValue("/docs/index.html").get())
+        assertEquals(pages["/docs/a.html"], found.getValue(url("/docs/a.html")).body().decodeToString())
+        assertEquals(1, requests.getValue("/docs/a.html").get())
+        assertNull(requests["/docs/deep/d.html"], "Links from pages at the maximum depth are not followed")
+    }
+
+    @Test
+    fun `pages that cannot be fetched should be skipped`() {
+        // When
+        val found = crawler(maxDepth = 3).crawl(url("/docs/index.html")) { false }.asSequence().map { it.url() }.toSet()
+
+        // Then
+        assertEquals(1, requests.getValue("/docs/missing.html").get())
+        assertFalse(url("/docs/missing.html") in found)
+    }
+
+    @Test
+    fun `crawl should wait for the consumer when the buffer is full`() {
+        // Given
+        val pages = crawler(maxDepth = 3, maxBufferedPages = 1).crawl(url("/docs/index.html")) { false }
+
+        // When
+        Thread.sleep(300)
+
+        // Then
+        assertNull(requests["/docs/deep/d.html"], "Workers should be blocked handing off pages")
+        assertEquals(4, pages.asSequence().count())
+        assertEquals(1, requests.getValue("/docs/deep/d.html").get())
+    }
+
+    @Test
+    fun `cancelled crawl should stop handing off pages`() {
+        // Given
+        val cancelled = AtomicBoolean()
+        val pages = crawler(maxDepth = 3, maxBufferedPages = 1).crawl(url("/docs/index.html")) { cancelled.get() }
+        Thread.sleep(300)
+
+        // When
+        cancelled.set(true)
+        val found = pages.asSequence().count()
+
+        // Then
+        assertTrue(found < 4, "Pages fetched before cancelling may still be returned, but no more")
+        assertNull(requests["/docs/deep/d.html"])
+    }
+
+    @Test
+    fun `links should be resolved against the page and stripped of fragments`() {
+        // When
+        val links = DocsCrawler.extractLinks(
+            """<a href="../api/Agent.html#method">Agent</a> <a href="mailto:team@embabel.com">Mail</a>""",
+            URI.create("https://docs.embabel.com/guide/index.html")
+        )
+
+        // Then
+        assertEquals(listOf("https://docs.embabel.com/api/Agent.html"), links)
+    }
+
+    @Test
+    fun `links should honor the base element and decode entities`() {
+        // When
+        val links = DocsCrawler.extractLinks(
+            """<head><base href="https://docs.embabel.com/api/"></head>
+               <a href="search.html?q=agent&amp;page=2">Search</a>
+               <a HREF = agent.html>Unquoted</a>""",
+            URI.create("https://docs.embabel.com/guide/index.html")
+        )
+
+        // Then
+        assertEquals(
+            listOf("https://docs.embabel.com/api/search.html?q=agent&page=2", "https://docs.embabel.com/api/agent.html"),
+            links
+        )
+    }
+
+    @Test
+    fun `prefix should be the directory of the seed`() {
+        assertEquals("https://docs.embabel.com/guide/", DocsCrawler.prefixOf("https://docs.embabel.com/guide/index.html"))
+        assertEquals("https://docs.embabel.com/guide/", DocsCrawler.prefixOf("https://docs.embabel.com/guide/"))
+        assertEquals("https://docs.embabel.com/", DocsCrawler.prefixOf("https://docs.embabel.com"))
+    }
+
+    private fun crawler(maxDepth: Int, maxPages: Int = 100, maxBufferedPages: Int = 16) =
+        DocsCrawler(GuideProperties.Crawl(maxDepth, maxPages, 2, Duration.ofMillis(1)), maxBufferedPages)
+
+    private fun url(path: String) = "http://127.0.0.1:${server.address.port}$path"
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.agent.rag.model.Chunk
+import com.embabel.agent.rag.neo.drivine.DrivineStore
+import com.embabel.common.core.types.SimilarityResult
+import com.embabel.guide.GuideProperties
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import java.time.Duration
+
+class DocsSearchServiceTest {
+
+    private val services = mutableListOf<DocsSearchService>()
+
+    @AfterEach
+    fun shutdown() {
+        services.forEach { it.shutdown() }
+    }
+
+    @Test
+    fun `results found by both searches should be fused and complete`() {
+        // Given
+        val service = service(
+            vector = { results("a", "b") },
+            text = { results("b", "c") },
+        )
+
+        // When
+        val result = service.hybridSearch("agent", 5)
+
+        // Then
+        assertTrue(result.complete)
+        assertEquals("b", result.hits.first().id, "Found by both searches, so ranked first")
+        assertEquals(setOf("a", "b", "c"), result.hits.map { it.id }.toSet())
+    }
+
+    @Test
+    fun `when vector search fails full-text results should stand alone`() {
+        // Given
+        val service = service(
+            vector = { throw IllegalStateException("Embedding API unavailable") },
+            text = { results("a", "b") },
+        )
+
+        // When
+        val result = service.hybridSearch("@Action", 5)
+
+        // Then
+        assertFalse(result.complete, "A fallback should not be cached")
+        assertEquals(listOf("a", "b"), result.hits.map { it.id })
+        assertTrue(result.hits.all { it.vectorRank == 0 && it.textRank > 0 })
+    }
+
+    @Test
+    fun `when full-text search fails vector results should stand alone`() {
+        // Given
+        val service = service(
+            vector = { results("a", "b") },
+            text = { throw IllegalArgumentException("Cannot parse query") },
+        )
+
+        // When
+        val result = service.hybridSearch("foo AND (", 5)
+
+        // Then
+        assertFalse(result.complete)
+        assertEquals(listOf("a", "b"), result.hits.map { it.id })
+        assertTrue(result.hits.all { it.vectorRank > 0 && it.textRank == 0 })
+    }
+
+    @Test
+    fun `when both searches fail the search should fail`() {
+        // Given
+        val service = service(
+            vector = { throw IllegalStateException("Embedding API unavailable") },
+            text = { throw IllegalArgumentException("Cannot parse query") },
+        )
+
+        // When
+        val failure = assertThrows(IllegalStateException::class.java) { service.hybridSearch("agent", 5) }
+
+        // Then
+        assertEquals(1, failure.suppressed.size)
+    }
+
+    @Test
+    fun `near-duplicates should be dropped from full-text results`() {
+        // Given
+        val service = service(
+            vector = { results("a") },
+            text = { results("a", "copy", "c") },
+            duplicates = setOf("copy"),
+        )
+
+        // When
+        val result = service.hybridSearch("agent", 5)
+
+        // Then
+        assertTrue(result.complete)
+        assertEquals(setOf("a", "c"), result.hits.map { it.id }.toSet())
+    }
+
+    @Test
+    fun `when the reranker fails the fused order should be kept but marked incomplete`() {
+        // Given
+        val service = service(
+            vector = { results("a", "b") },
+            text = { results("b", "c") },
+            reranker = { _, _, _ -> throw IllegalStateException("Reranking model unavailable") },
+        )
+
+        // When
+        val result = service.hybridSearch("agent", 2)
+
+        // Then
+        assertFalse(result.complete)
+        assertEquals(2, result.hits.size)
+        assertEquals("b", result.hits.first().id)
+    }
+
+    private fun service(
+        vector: () -> List<SimilarityResult<Chunk>>,
+        text: () -> List<SimilarityResult<Chunk>>,
+        duplicates: Set<String> = emptySet(),
+        reranker: Reranker = Reranker.NONE,
+    ): DocsSearchService {
+        val store = mock(DrivineStore::class.java) { invocation ->
+            when (invocation.method.name) {
+                "vectorSearch" -> vector()
+                "textSearch" -> text()
+                else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        }
+        // Not ready, so vector search goes to the store
+        val vectorIndex = mock(ChunkVectorIndex::class.java)
+        val nearDuplicateChunks = mock(NearDuplicateChunks::class.java) { invocation ->
+            if (invocation.method.name == "duplicatesAmong") {
+                invocation.getArgument<Collection<String>>(0).filter { it in duplicates }.toSet()
+            } else {
+                Mockito.RETURNS_DEFAULTS.answer(invocation)
+            }
+        }
+        val guideProperties = mock(GuideProperties::class.java)
+        `when`(guideProperties.search()).thenReturn(
+            GuideProperties.Search(20, 8, 60, 1000, Duration.ofHours(1), GuideProperties.Search.RerankerType.NONE, 30)
+        )
+        return DocsSearchService(store, guideProperties, reranker, vectorIndex, nearDuplicateChunks)
+            .also { services.add(it) }
+    }
+
+    private fun results(vararg ids: String): List<SimilarityResult<Chunk>> =
+        ids.map { id ->
+            val chunk = mock(Chunk::class.java) { invocation ->
+                when (invocation.method.name) {
+                    "getId" -> id
+                    "getText" -> "Text of $id"
+                    else -> Mockito.RETURNS_DEFAULTS.answer(invocation)
+                }
+            }
+            @Suppress("UNCHECKED_CAST")
+            mock(SimilarityResult::class.java) { invocation ->
+                if (invocation.method.name == "getMatch") chunk else Mockito.RETURNS_DEFAULTS.answer(invocation)
+            } as SimilarityResult<Chunk>
+        }
+}
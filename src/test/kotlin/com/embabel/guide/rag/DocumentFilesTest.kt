@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Assumptions.assumeFalse
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.NotDirectoryException
+import java.nio.file.Path
+import kotlin.io.path.createDirectories
+import kotlin.io.path.writeText
+
+class DocumentFilesTest {
+
+    @Test
+    fun `walk should find documents and skip excluded directories`(@TempDir root: Path) {
+        // Given
+        root.resolve("guide.md").writeText("# Guide")
+        root.resolve("docs/api").createDirectories().resolve("index.HTML").writeText("<h1>API</h1>")
+        root.resolve("docs/logo.png").writeText("not a document")
+        root.resolve("node_modules/pkg").createDirectories().resolve("README.md").writeText("# Dependency")
+        root.resolve("target").createDirectories().resolve("notes.txt").writeText("generated")
+
+        // When
+        val found = DocumentFiles.walk(root).use { files -> files.map { root.relativize(it).toString() }.toList() }
+
+        // Then
+        assertEquals(setOf("guide.md", "docs/api/index.HTML"), found.toSet())
+    }
+
+    @Test
+    fun `walk should skip unreadable directories and carry on`(@TempDir root: Path) {
+        // Given
+        root.resolve("a.md").writeText("# A")
+        val locked = root.resolve("locked").createDirectories()
+        locked.resolve("secret.md").writeText("# Secret")
+        root.resolve("z").createDirectories().resolve("z.md").writeText("# Z")
+        locked.toFile().setReadable(false)
+        try {
+            assumeFalse(Files.isReadable(locked), "permissions are not enforced for this user")
+
+            // When
+            val found = DocumentFiles.walk(root).use { files -> files.map { it.fileName.toString() }.toList() }
+
+            // Then
+            assertEquals(setOf("a.md", "z.md"), found.toSet())
+        } finally {
+            locked.toFile().setReadable(true)
+        }
+    }
+
+    @Test
+    fun `walk should reject a root that is not a directory`(@TempDir root: Path) {
+        assertThrows(NotDirectoryException::class.java) { DocumentFiles.walk(root.resolve("missing")) }
+    }
+
+    @Test
+    fun `extension should be lower case without the dot`() {
+        assertEquals("pdf", DocumentFiles.extension(Path.of("/tmp/Manual.PDF")))
+        assertEquals("", DocumentFiles.extension(Path.of("/tmp/Makefile")))
+        assertFalse(DocumentFiles.isDocument(Path.of("/tmp/Makefile")))
+    }
+}
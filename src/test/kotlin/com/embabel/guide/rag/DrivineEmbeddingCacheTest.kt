@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.Neo4jPropertiesInitializer
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.mcp.client.common.autoconfigure.McpClientAutoConfiguration
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.transaction.annotation.Transactional
+import java.time.Duration
+
+@SpringBootTest
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = [Neo4jPropertiesInitializer::class])
+@ImportAutoConfiguration(exclude = [McpClientAutoConfiguration::class])
+@Transactional
+class DrivineEmbeddingCacheTest {
+
+    @Autowired
+    private lateinit var cache: DrivineEmbeddingCache
+
+    @Autowired
+    @Qualifier("neo")
+    private lateinit var manager: PersistenceManager
+
+    @Test
+    fun `entries unused for longer than the ttl should be pruned`() {
+        // Given
+        cache.putAll(mapOf("stale" to floatArrayOf(1f, 2f), "fresh" to floatArrayOf(3f, 4f)), "test")
+        lastUsedDaysAgo("stale", 40)
+
+        // When
+        val pruned = cache.pruneUnusedFor(Duration.ofDays(30))
+
+        // Then
+        assertEquals(1, pruned)
+        assertEquals(setOf("fresh"), cache.getAll(listOf("stale", "fresh")).keys)
+    }
+
+    @Test
+    fun `lookups should keep entries from being pruned`() {
+        // Given
+        cache.putAll(mapOf("looked-up" to floatArrayOf(1f), "ignored" to floatArrayOf(2f)), "test")
+        lastUsedDaysAgo("looked-up", 40)
+        lastUsedDaysAgo("ignored", 40)
+
+        // When
+        cache.getAll(listOf("looked-up"))
+        cache.pruneUnusedFor(Duration.ofDays(30))
+
+        // Then
+        assertEquals(setOf("looked-up"), cache.getAll(listOf("looked-up", "ignored")).keys)
+    }
+
+    private fun lastUsedDaysAgo(key: String, days: Int) {
+        manager.execute(
+            QuerySpecification
+                .withStatement(
+                    """
+                    MATCH (e:EmbeddingCacheEntry {key: ${'$'}key})
+                    SET e.usedAt = datetime() - duration({days: ${'$'}days})
+                    """
+                )
+                .bind(mapOf("key" to key, "days" to days))
+        )
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class HnswIndexTest {
+
+    private val dimensions = 32
+
+    @Test
+    fun `empty index should find nothing`() {
+        assertTrue(HnswIndex(dimensions, 16, 100, 1).search(FloatArray(dimensions) { 1f }, 10, 64).isEmpty())
+    }
+
+    @Test
+    fun `should find a stored vector as its own nearest neighbour`() {
+        // Given
+        val vectors = vectors(1000, Random(7))
+        val index = index(vectors)
+
+        // When
+        val nearest = index.search(vectors[123], 1, 64).single()
+
+        // Then
+        assertEquals(123, nearest.node())
+        assertEquals(1.0f, nearest.score(), 1e-5f)
+    }
+
+    @Test
+    fun `should find most of the exact nearest neighbours`() {
+        // Given
+        val random = Random(11)
+        val vectors = vectors(2000, random)
+        val index = index(vectors)
+        val queries = vectors.shuffled(random).take(50).map { vector ->
+            FloatArray(dimensions) { vector[it] + (random.nextFloat() - 0.5f) * 0.4f }
+        }
+
+        // When
+        val recall = queries.map { query ->
+            val exact = vectors.indices.sortedByDescending { cosine(vectors[it], query) }.take(10).toSet()
+            index.search(query, 10, 64).count { it.node() in exact } / 10.0
+        }.average()
+
+        // Then
+        assertTrue(recall >= 0.9, "Recall@10 was $recall")
+    }
+
+    @Test
+    fun `int8 quantized index with rescoring should find most of the exact nearest neighbours`() {
+        assertTrue(quantizedRecall(VectorStorage.int8(dimensions), 64) >= 0.9)
+    }
+
+    @Test
+    fun `binary quantized index with rescoring should find most of the exact nearest neighbours`() {
+        // Binary vectors order candidates coarsely, so rescore more of them
+        assertTrue(quantizedRecall(VectorStorage.binary(dimensions), 200) >= 0.8)
+    }
+
+    @Test
+    fun `rescored results should have full-precision scores`() {
+        // Given
+        val vectors = vectors(500, Random(8))
+        val index = HnswIndex(VectorStorage.binary(dimensions), VectorStorage.floats(dimensions), 16, 100, 1)
+        vectors.forEach { index.add(it) }
+
+        // When
+        val results = index.search(vectors[7], 5, 64)
+
+        // Then
+        assertEquals(7, results.first().node())
+        results.forEach { assertEquals(cosine(vectors[it.node()], vectors[7]), it.score(), 1e-4f) }
+    }
+
+    @Test
+    fun `should return results most similar first with cosine scores`() {
+        // Given
+        val vectors = vectors(500, Random(3))
+        val index = index(vectors)
+        val query = vectors(1, Random(4)).single()
+
+        // When
+        val results = index.search(query, 10, 64)
+
+        // Then
+        assertEquals(10, results.size)
+        assertEquals(results.sortedByDescending { it.score() }, results)
+        results.forEach { assertEquals(cosine(vectors[it.node()], query), it.score(), 1e-4f) }
+    }
+
+    @Test
+    fun `removed nodes should not be returned`() {
+        // Given
+        val vectors = vectors(1000, Random(5))
+        val index = index(vectors)
+
+        // When
+        index.remove(42)
+        index.remove(42)
+        val results = index.search(vectors[42], 5, 64)
+
+        // Then
+        assertEquals(1, index.deletedCount())
+        assertTrue(index.isDeleted(42))
+        assertEquals(5, results.size)
+        assertTrue(results.none { it.node() == 42 })
+    }
+
+    @Test
+    fun `should reject vectors of the wrong length`() {
+        val index = index(vectors(10, Random(1)))
+        assertThrows<IllegalArgumentException> { index.add(FloatArray(dimensions + 1)) }
+        assertThrows<IllegalArgumentException> { index.search(FloatArray(dimensions - 1), 1, 10) }
+    }
+
+    private fun quantizedRecall(storage: VectorStorage, ef: Int): Double {
+        val random = Random(11)
+        val vectors = vectors(2000, random)
+        val index = HnswIndex(storage, VectorStorage.floats(dimensions), 16, 100, 1)
+        vectors.forEach { index.add(it) }
+        val queries = vectors.shuffled(random).take(50).map { vector ->
+            FloatArray(dimensions) { vector[it] + (random.nextFloat() - 0.5f) * 0.4f }
+        }
+        return queries.map { query ->
+            val exact = vectors.indices.sortedByDescending { cosine(vectors[it], query) }.take(10).toSet()
+            index.search(query, 10, ef).count { it.node() in exact } / 10.0
+        }.average()
+    }
+
+    private fun index(vectors: List<FloatArray>) =
+        HnswIndex(dimensions, 16, 100, 1).apply { vectors.forEach { add(it) } }
+
+    /**
+     * Vectors scattered around a few centres, like embeddings of text on a handful of topics
+     */
+    private fun vectors(count: Int, random: Random): List<FloatArray> {
+        val centres = List(8) { FloatArray(dimensions) { random.nextFloat() * 2 - 1 } }
+        return List(count) {
+            val centre = centres[random.nextInt(centres.size)]
+            FloatArray(dimensions) { centre[it] + (random.nextFloat() - 0.5f) * 0.8f }
+        }
+    }
+
+    private fun cosine(a: FloatArray, b: FloatArray): Float {
+        var dot = 0f
+        var normA = 0f
+        var normB = 0f
+        for (i in a.indices) {
+            dot += a[i] * b[i]
+            normA += a[i] * a[i]
+            normB += b[i] * b[i]
+        }
+        return dot / (sqrt(normA) * sqrt(normB))
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito.mock
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class IngestionJobServiceTest {
+
+    private val service = IngestionJobService(mock(DataManager::class.java))
+
+    @AfterEach
+    fun shutdown() {
+        service.shutdown()
+    }
+
+    @Test
+    fun `status should count items reaching each stage`() {
+        // Given
+        val work = IngestionJobService.Work { listener, _ ->
+            listOf("a", "b", "c").forEach { item ->
+                listener.onStage(item, IngestionPipeline.Stage.QUEUED, null)
+                listener.onStage(item, IngestionPipeline.Stage.READ, null)
+            }
+            listener.onStage("a", IngestionPipeline.Stage.WRITTEN, null)
+            listener.onStage("b", IngestionPipeline.Stage.SKIPPED, null)
+            listener.onStage("c", IngestionPipeline.Stage.FAILED, IllegalStateException("bad page"))
+            IngestionPipeline.Report(3, 1, 1, 1, 0, Duration.ZERO)
+        }
+
+        // When
+        val status = awaitFinished(service.submit("test", work))
+
+        // Then
+        assertEquals(IngestionJob.State.COMPLETED, status.state)
+        assertEquals(3, status.counts[IngestionPipeline.Stage.QUEUED])
+        assertEquals(3, status.counts[IngestionPipeline.Stage.READ])
+        assertEquals(1, status.counts[IngestionPipeline.Stage.WRITTEN])
+        assertEquals(1, status.counts[IngestionPipeline.Stage.SKIPPED])
+        assertEquals(1, status.counts[IngestionPipeline.Stage.FAILED])
+        assertEquals(listOf(IngestionJob.ItemProgress("c", IngestionPipeline.Stage.FAILED, "bad page")), status.recentFailures)
+    }
+
+    @Test
+    fun `only the most recent failures should be kept`() {
+        // Given
+        val failures = IngestionJob.MAX_RECENT_FAILURES * 3
+        val work = IngestionJobService.Work { listener, _ ->
+            repeat(failures) { listener.onStage("item $it", IngestionPipeline.Stage.FAILED, RuntimeException("failed $it")) }
+            IngestionPipeline.Report(failures, 0, 0, failures, 0, Duration.ZERO)
+        }
+
+        // When
+        val status = awaitFinished(service.submit("test", work))
+
+        // Then
+        assertEquals(failures, status.counts[IngestionPipeline.Stage.FAILED])
+        assertEquals(IngestionJob.MAX_RECENT_FAILURES, status.recentFailures.size)
+        assertEquals("item ${failures - 1}", status.recentFailures.last().item)
+    }
+
+    @Test
+    fun `cancelling should stop a running job cooperatively`() {
+        // Given
+        val running = CountDownLatch(1)
+        val work = IngestionJobService.Work { _, cancelled ->
+            running.countDown()
+            while (!cancelled.asBoolean) {
+                Thread.sleep(5)
+            }
+            IngestionPipeline.Report(10, 2, 0, 0, 8, Duration.ZERO)
+        }
+        val job = service.submit("test", work)
+        assertTrue(running.await(5, TimeUnit.SECONDS))
+
+        // When
+        val accepted = service.cancel(job.id)
+
+        // Then
+        assertTrue(accepted)
+        assertEquals(IngestionJob.State.CANCELLED, awaitFinished(job).state)
+        assertFalse(service.cancel(job.id))
+    }
+
+    @Test
+    fun `a job cancelled while queued should never run`() {
+        // Given
+        val release = CountDownLatch(1)
+        val blocker = service.submit("blocker") { _, _ ->
+            release.await()
+            IngestionPipeline.Report(0, 0, 0, 0, 0, Duration.ZERO)
+        }
+        var ran = false
+        val queued = service.submit("queued") { _, _ ->
+            ran = true
+            IngestionPipeline.Report(0, 0, 0, 0, 0, Duration.ZERO)
+        }
+
+        // When
+        service.cancel(queued.id)
+        release.countDown()
+
+        // Then
+        awaitFinished(blocker)
+        assertEquals(IngestionJob.State.CANCELLED, awaitFinished(queued).state)
+        assertFalse(ran)
+    }
+
+    @Test
+    fun `only the most recent finished jobs should be retained`() {
+        // Given
+        val first = service.submit("job 0") { _, _ -> IngestionPipeline.Report(0, 0, 0, 0, 0, Duration.ZERO) }
+        awaitFinished(first)
+
+        // When
+        repeat(25) { n ->
+            awaitFinished(service.submit("job ${n + 1}") { _, _ -> IngestionPipeline.Report(0, 0, 0, 0, 0, Duration.ZERO) })
+        }
+
+        // Then
+        val listed = service.list()
+        assertEquals(20, listed.size)
+        assertEquals("job 25", listed.first().description)
+        assertTrue(service.find(first.id).isEmpty)
+    }
+
+    private fun awaitFinished(job: IngestionJob): IngestionJob.Status {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (!job.status().isFinished) {
+            assertTrue(System.nanoTime() < deadline, "Job ${job.id} did not finish")
+            Thread.sleep(5)
+        }
+        return job.status()
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.GuideProperties
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+class IngestionPipelineTest {
+
+    @Test
+    fun `run should write every readable item and skip the rest`() {
+        // Given
+        val pipeline = IngestionPipeline(4, 2, 8)
+        val written = ConcurrentHashMap.newKeySet<String>()
+
+        // When
+        val report = pipeline.run(
+            (1..20).map { "item-$it" },
+            { item -> if (item.endsWith("0")) null else item.uppercase() },
+            { doc -> written.add(doc) },
+            IngestionPipeline.Listener.none()
+        )
+
+        // Then
+        assertEquals(20, report.total())
+        assertEquals(18, report.written())
+        assertEquals(2, report.skipped())
+        assertEquals(0, report.failed())
+        assertTrue(written.contains("ITEM-1"))
+        assertFalse(written.contains("ITEM-10"))
+    }
+
+    @Test
+    fun `run should isolate failures to the item that caused them`() {
+        // Given
+        val pipeline = IngestionPipeline(4, 2, 8)
+        val failures = ConcurrentHashMap<String, Throwable>()
+
+        // When
+        val report = pipeline.run(
+            listOf("good-1", "bad-read", "good-2", "bad-write"),
+            { item -> if (item == "bad-read") throw IllegalStateException("fetch failed") else item },
+            { doc -> if (doc == "bad-write") throw IllegalStateException("write failed") },
+            { item, stage, failure -> if (stage == IngestionPipeline.Stage.FAILED) failures[item] = failure!! }
+        )
+
+        // Then
+        assertEquals(2, report.written())
+        assertEquals(2, report.failed())
+        assertEquals("fetch failed", failures["bad-read"]?.message)
+        assertEquals("write failed", failures["bad-write"]?.message)
+    }
+
+    @Test
+    fun `run should respect stage concurrency and in-flight limits`() {
+        // Given
+        val pipeline = IngestionPipeline(3, 1, 5)
+        val reading = AtomicInteger()
+        val writing = AtomicInteger()
+        val inFlight = AtomicInteger()
+        val maxReading = AtomicInteger()
+        val maxWriting = AtomicInteger()
+        val maxInFlight = AtomicInteger()
+
+        // When
+        pipeline.run(
+            (1..30).toList(),
+            { item ->
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+                maxReading.accumulateAndGet(reading.incrementAndGet()) { a, b -> maxOf(a, b) }
+                Thread.sleep(2)
+                reading.decrementAndGet()
+                item
+            },
+            { _ ->
+                maxWriting.accumulateAndGet(writing.incrementAndGet()) { a, b -> maxOf(a, b) }
+                Thread.sleep(5)
+                writing.decrementAndGet()
+                inFlight.decrementAndGet()
+            },
+            IngestionPipeline.Listener.none()
+        )
+
+        // Then
+        assertTrue(maxReading.get() <= 3, "read concurrency was ${maxReading.get()}")
+        assertEquals(1, maxWriting.get())
+        assertTrue(maxInFlight.get() <= 5, "in flight was ${maxInFlight.get()}")
+    }
+
+    @Test
+    fun `runStreaming should not read ahead of the in-flight window`() {
+        // Given
+        val pipeline = IngestionPipeline(2, 1, 4)
+        val produced = AtomicInteger()
+        val written = AtomicInteger()
+        val maxAhead = AtomicInteger()
+        val items = generateSequence(1) { it + 1 }.take(40).map { item ->
+            maxAhead.accumulateAndGet(produced.incrementAndGet() - written.get()) { a, b -> maxOf(a, b) }
+            item
+        }.iterator()
+
+        // When
+        val report = pipeline.runStreaming(
+            items,
+            { item -> item },
+            { _ ->
+                Thread.sleep(1)
+                written.incrementAndGet()
+            },
+            IngestionPipeline.Listener.none(),
+            { false }
+        )
+
+        // Then
+        assertEquals(40, report.total())
+        assertEquals(40, report.written())
+        assertTrue(maxAhead.get() <= 4, "read ahead by ${maxAhead.get()}")
+    }
+
+    @Test
+    fun `runStreaming should stop admitting items when cancelled`() {
+        // Given
+        val pipeline = IngestionPipeline(1, 1, 2)
+        val written = AtomicInteger()
+        val produced = AtomicInteger()
+        val items = generateSequence(1) { it + 1 }.onEach { produced.incrementAndGet() }.iterator()
+
+        // When
+        val report = pipeline.runStreaming(
+            items,
+            { item -> item },
+            { _ -> written.incrementAndGet() },
+            IngestionPipeline.Listener.none(),
+            { written.get() >= 5 }
+        )
+
+        // Then
+        assertTrue(report.written() >= 5)
+        assertEquals(report.total(), report.written() + report.cancelled())
+        assertTrue(produced.get() < 20, "produced ${produced.get()} items")
+    }
+
+    @Test
+    fun `ordered writes should follow admission order whatever order reads finish in`() {
+        // Given
+        val pipeline = IngestionPipeline.forParsing(GuideProperties.Ingestion(8, 2, 16, 4, true))
+        val written = Collections.synchronizedList(mutableListOf<Int>())
+
+        // When
+        val report = pipeline.run(
+            (1..40).toList(),
+            { item ->
+                Thread.sleep((item * 7 % 5).toLong())
+                if (item % 10 == 0) null else item
+            },
+            { item -> written.add(item) },
+            IngestionPipeline.Listener.none()
+        )
+
+        // Then
+        assertEquals(36, report.written())
+        assertEquals((1..40).filter { it % 10 != 0 }, written.toList())
+    }
+
+    @Test
+    fun `parsing pipeline should read on a work-stealing pool`() {
+        // Given
+        val pipeline = IngestionPipeline.forParsing(GuideProperties.Ingestion(8, 1, 16, 2, false))
+        val readers = ConcurrentHashMap.newKeySet<String>()
+
+        // When
+        pipeline.run(
+            (1..20).toList(),
+            { item ->
+                readers.add(Thread.currentThread().name)
+                item
+            },
+            { _ -> },
+            IngestionPipeline.Listener.none()
+        )
+
+        // Then
+        assertTrue(readers.all { it.startsWith("ingest-parse-") }, "read on $readers")
+        assertTrue(readers.size <= 2, "read on $readers")
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class LexicalRerankerTest {
+
+    private val reranker = LexicalReranker()
+
+    @Test
+    fun `text matching the query should outrank a better placed candidate that does not`() {
+        // Given
+        val texts = listOf(
+            "Agents plan over actions and goals.",
+            "Tools let the model act on the world.",
+            "The PromptRunner interface creates objects from prompts.",
+        )
+
+        // When
+        val scores = reranker.score("How do I use PromptRunner?", texts)
+
+        // Then
+        assertEquals(2, scores.indices.maxBy { scores[it] })
+    }
+
+    @Test
+    fun `original order should break ties`() {
+        // When
+        val scores = reranker.score("blackboard", listOf("first", "second", "third"))
+
+        // Then
+        assertTrue(scores[0] > scores[1])
+        assertTrue(scores[1] > scores[2])
+    }
+
+    @Test
+    fun `an exact phrase should outrank scattered words`() {
+        // Given
+        val texts = listOf(
+            "Goals are achieved by actions, and each action has a cost.",
+            "The platform chooses the action cost when planning.",
+        )
+
+        // When
+        val scores = reranker.score("action cost", texts)
+
+        // Then
+        assertTrue(scores[1] > scores[0])
+    }
+
+    @Test
+    fun `camel case identifiers should match their parts`() {
+        // When
+        val terms = LexicalReranker.terms("Call withLlm on the PromptRunner")
+
+        // Then
+        assertEquals(listOf("call", "withllm", "with", "llm", "on", "the", "promptrunner", "prompt", "runner"), terms)
+    }
+
+    @Test
+    fun `stop words alone should leave the original order`() {
+        // When
+        val scores = reranker.score("how do I", listOf("how do I do it", "nothing"))
+
+        // Then
+        assertTrue(scores[0] > scores[1])
+    }
+}
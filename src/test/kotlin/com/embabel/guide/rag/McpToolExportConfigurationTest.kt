@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.Neo4jPropertiesInitializer
+import io.modelcontextprotocol.client.McpClient
+import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.mcp.client.common.autoconfigure.McpClientAutoConfiguration
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.web.server.LocalServerPort
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+
+/**
+ * The docs tools are exported to MCP clients whatever bean type declares them
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = [Neo4jPropertiesInitializer::class])
+@ImportAutoConfiguration(exclude = [McpClientAutoConfiguration::class])
+class McpToolExportConfigurationTest {
+
+    @LocalServerPort
+    private var port: Int = 0
+
+    @Test
+    fun `MCP clients should see each docs tool once`() {
+        // Given
+        val client = McpClient.sync(HttpClientSseClientTransport.builder("http://localhost:$port").build()).build()
+
+        // When
+        val names = try {
+            client.initialize()
+            client.listTools().tools().map { it.name() }
+        } finally {
+            client.closeGracefully()
+        }
+
+        // Then
+        for (tool in listOf("docs_hybridSearch", "docs_textSearch", "docs_vectorSearch")) {
+            assertEquals(1, names.count { it == tool }, "$tool in exported tools: $names")
+        }
+    }
+}
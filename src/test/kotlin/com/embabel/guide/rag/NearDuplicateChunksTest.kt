@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.Neo4jPropertiesInitializer
+import org.drivine.manager.PersistenceManager
+import org.drivine.query.QuerySpecification
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.mcp.client.common.autoconfigure.McpClientAutoConfiguration
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.transaction.annotation.Transactional
+
+@SpringBootTest
+@ActiveProfiles("test")
+@ContextConfiguration(initializers = [Neo4jPropertiesInitializer::class])
+@ImportAutoConfiguration(exclude = [McpClientAutoConfiguration::class])
+@Transactional
+class NearDuplicateChunksTest {
+
+    private val passage = """
+        Near-duplicate test passage: agents are composed of actions, goals and conditions. The planner finds
+        a sequence of actions that achieves the goal, replanning after each action based on the blackboard.
+        Agents can be written in Java or Kotlin and run alongside existing Spring applications.
+        """.trimIndent()
+
+    private val unrelated = """
+        Near-duplicate test passage: to delete all data, open the Neo4j browser, log in with the configured
+        password and run a query that detaches and deletes every node, then restart the application so that
+        references are ingested again from scratch, which may take several minutes.
+        """.trimIndent()
+
+    @Autowired
+    private lateinit var nearDuplicateChunks: NearDuplicateChunks
+
+    @Autowired
+    @Qualifier("neo")
+    private lateinit var manager: PersistenceManager
+
+    @Test
+    fun `near-duplicate chunks should leave the vector index and search results`() {
+        // Given
+        writeChunk("canonical", passage)
+        nearDuplicateChunks.deduplicate()
+        // Case and punctuation don't change the signature
+        writeChunk("copy", passage.uppercase().replace(",", ""))
+        writeChunk("other", unrelated)
+
+        // When
+        val result = nearDuplicateChunks.deduplicate()
+
+        // Then
+        assertEquals(1, result.duplicates)
+        assertEquals("canonical", canonicalOf("copy"))
+        assertFalse(hasEmbedding("copy"))
+        assertTrue(hasEmbedding("canonical"))
+        assertTrue(hasEmbedding("other"))
+        assertEquals(setOf("copy"), nearDuplicateChunks.duplicatesAmong(listOf("canonical", "copy", "other")))
+    }
+
+    @Test
+    fun `duplicates should get their embedding back when the canonical chunk is deleted`() {
+        // Given
+        writeChunk("canonical", passage)
+        nearDuplicateChunks.deduplicate()
+        writeChunk("copy", passage)
+        nearDuplicateChunks.deduplicate()
+
+        // When
+        execute("MATCH (c:Chunk {id: 'canonical'}) DETACH DELETE c")
+        val result = nearDuplicateChunks.deduplicate()
+
+        // Then
+        assertEquals(1, result.restored)
+        assertTrue(hasEmbedding("copy"))
+        assertNull(canonicalOf("copy"))
+        assertEquals(emptySet<String>(), nearDuplicateChunks.duplicatesAmong(listOf("copy")))
+    }
+
+    @Test
+    fun `a run with no new chunks should examine nothing`() {
+        // Given
+        writeChunk("canonical", passage)
+        nearDuplicateChunks.deduplicate()
+
+        // When
+        val result = nearDuplicateChunks.deduplicate()
+
+        // Then
+        assertEquals(NearDuplicateChunks.Result(0, 0, 0), result)
+    }
+
+    private fun writeChunk(id: String, text: String) =
+        execute("CREATE (:Chunk {id: ${'$'}id, text: ${'$'}text, embedding: [0.1, 0.2, 0.3]})", mapOf("id" to id, "text" to text))
+
+    private fun canonicalOf(id: String): String? = row(
+        "OPTIONAL MATCH (:Chunk {id: ${'$'}id})-[:DUPLICATE_OF]->(c:Chunk) RETURN {id: c.id}", id
+    )["id"] as String?
+
+    private fun hasEmbedding(id: String): Boolean =
+        row("MATCH (c:Chunk {id: ${'$'}id}) RETURN {embedded: c.embedding IS NOT NULL}", id)["embedded"] as Boolean
+
+    private fun row(cypher: String, id: String): Map<String, Any?> {
+        @Suppress("UNCHECKED_CAST")
+        return manager.getOne(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(mapOf("id" to id))
+                .transform(Map::class.java)
+        ) as Map<String, Any?>
+    }
+
+    private fun execute(cypher: String, params: Map<String, Any> = emptyMap()) {
+        manager.execute(
+            QuerySpecification
+                .withStatement(cypher)
+                .bind(params)
+        )
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.common.ai.model.SpringAiEmbeddingService
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.document.Document
+import org.springframework.ai.embedding.Embedding
+import org.springframework.ai.embedding.EmbeddingModel
+import org.springframework.ai.embedding.EmbeddingRequest
+import org.springframework.ai.embedding.EmbeddingResponse
+import java.util.concurrent.atomic.AtomicInteger
+
+class QueryEmbeddingCacheTest {
+
+    @Test
+    fun `repeated queries should be embedded once`() {
+        // Given
+        val model = QueryCountingEmbeddingModel()
+        val service = cached(model)
+
+        // When
+        val first = service.embed("How do I define an agent?")
+        val second = service.embed("  How do I define   an agent? ")
+
+        // Then
+        assertArrayEquals(first, second)
+        assertEquals(1, model.texts.get())
+        assertEquals(0.5, service.hitRatio())
+    }
+
+    @Test
+    fun `cached vectors should not be changed by callers`() {
+        // Given
+        val service = cached(QueryCountingEmbeddingModel())
+        val first = service.embed("agents")
+
+        // When
+        first[0] = 42f
+
+        // Then
+        assertNotEquals(42f, service.embed("agents")[0])
+    }
+
+    @Test
+    fun `multi-text calls should pass straight through`() {
+        // Given
+        val model = QueryCountingEmbeddingModel()
+        val service = cached(model)
+
+        // When
+        service.embed(listOf("a", "b"))
+        service.embed(listOf("a", "b"))
+
+        // Then
+        assertEquals(4, model.texts.get())
+    }
+
+    @Test
+    fun `zero entries should disable the cache`() {
+        // Given
+        val model = QueryCountingEmbeddingModel()
+        val service = cached(model, maxEntries = 0)
+
+        // When
+        service.embed("agents")
+        service.embed("agents")
+
+        // Then
+        assertEquals(2, model.texts.get())
+        assertEquals(0.0, service.hitRatio())
+    }
+
+    private fun cached(model: EmbeddingModel, maxEntries: Long = 100) = QueryEmbeddingCache(
+        SpringAiEmbeddingService(name = "test", model = model, provider = "test"),
+        maxEntries,
+    )
+}
+
+/**
+ * Deterministic embedding model that counts the texts it embeds
+ */
+private class QueryCountingEmbeddingModel : EmbeddingModel {
+
+    val texts = AtomicInteger()
+
+    private fun vector(text: String) = FloatArray(4) { i -> (text.hashCode() xor i).toFloat() }
+
+    override fun embed(document: Document): FloatArray {
+        texts.incrementAndGet()
+        return vector(document.text ?: "")
+    }
+
+    override fun embed(texts: List<String>): MutableList<FloatArray> {
+        this.texts.addAndGet(texts.size)
+        return texts.map { vector(it) }.toMutableList()
+    }
+
+    override fun call(request: EmbeddingRequest): EmbeddingResponse =
+        EmbeddingResponse(embed(request.instructions).mapIndexed { i, vector -> Embedding(vector, i) })
+
+    override fun dimensions(): Int = 4
+}
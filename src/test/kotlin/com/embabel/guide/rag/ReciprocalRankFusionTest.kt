@@ -0,0 +1,73 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class ReciprocalRankFusionTest {
+
+    @Test
+    fun `items found by both searches should outrank items found by one`() {
+        // Given
+        val vector = listOf("a", "b", "c")
+        val text = listOf("d", "c", "e")
+
+        // When
+        val fused = ReciprocalRankFusion.fuse(vector, text, { it }, ReciprocalRankFusion.DEFAULT_K, 10)
+
+        // Then
+        assertEquals("c", fused.first().item())
+        assertTrue(fused.first().inBoth())
+        assertEquals(3, fused.first().firstRank())
+        assertEquals(2, fused.first().secondRank())
+        assertEquals(listOf("a", "b", "c", "d", "e").sorted(), fused.map { it.item() }.sorted())
+    }
+
+    @Test
+    fun `scores should sum reciprocal ranks`() {
+        // When
+        val fused = ReciprocalRankFusion.fuse(listOf("a"), listOf("a"), { it }, 60, 10)
+
+        // Then
+        assertEquals(1, fused.size)
+        assertEquals(2.0 / 61, fused.single().score(), 1e-12)
+    }
+
+    @Test
+    fun `ties should go to the better single rank`() {
+        // When
+        val fused = ReciprocalRankFusion.fuse(listOf("a", "b"), listOf("x", "y"), { it }, 60, 10)
+
+        // Then
+        assertEquals(listOf("a", "x", "b", "y"), fused.map { it.item() })
+    }
+
+    @Test
+    fun `results should be limited and taken from the first list`() {
+        // Given
+        data class Hit(val id: String, val source: String)
+        val vector = listOf(Hit("1", "vector"), Hit("2", "vector"))
+        val text = listOf(Hit("2", "text"), Hit("3", "text"))
+
+        // When
+        val fused = ReciprocalRankFusion.fuse(vector, text, { it.id }, 60, 2)
+
+        // Then
+        assertEquals(2, fused.size)
+        assertEquals(Hit("2", "vector"), fused.first().item())
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import com.embabel.guide.GuideProperties
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.springframework.ai.tool.ToolCallback
+import org.springframework.ai.tool.definition.ToolDefinition
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class SearchResultCacheTest {
+
+    @Test
+    fun `repeated calls should be answered from the cache`() {
+        // Given
+        val tool = CountingTool()
+        val cached = cache().cached(tool)
+
+        // When
+        val first = cached.call("""{"query": "PromptRunner", "topK": 5}""")
+        val second = cached.call("""{"topK": 5,  "query": "  PromptRunner "}""")
+
+        // Then
+        assertEquals(first, second)
+        assertEquals(1, tool.calls.get())
+    }
+
+    @Test
+    fun `different arguments should not share an entry`() {
+        // Given
+        val tool = CountingTool()
+        val cached = cache().cached(tool)
+
+        // When
+        cached.call("""{"query": "PromptRunner", "topK": 5}""")
+        cached.call("""{"query": "PromptRunner", "topK": 10}""")
+
+        // Then
+        assertEquals(2, tool.calls.get())
+    }
+
+    @Test
+    fun `ingesting content should invalidate cached results`() {
+        // Given
+        val tool = CountingTool()
+        val cache = cache()
+        val cached = cache.cached(tool)
+        cached.call("""{"query": "agents"}""")
+
+        // When
+        cache.onContentIngested(ContentIngestedEvent("references", 3))
+        cached.call("""{"query": "agents"}""")
+
+        // Then
+        assertEquals(2, tool.calls.get())
+        assertEquals(1, cache.stats().indexVersion)
+    }
+
+    @Test
+    fun `failures should not be cached`() {
+        // Given
+        val tool = CountingTool(failures = 1)
+        val cached = cache().cached(tool)
+
+        // When
+        assertThrows(IllegalStateException::class.java) { cached.call("""{"query": "agents"}""") }
+        val result = cached.call("""{"query": "agents"}""")
+
+        // Then
+        assertEquals("result 2", result)
+        assertEquals(2, tool.calls.get())
+    }
+
+    @Test
+    fun `results that are not cacheable should not be cached`() {
+        // Given
+        val cache = cache()
+        val calls = AtomicInteger()
+        val request = mapOf("query" to "agents")
+
+        // When
+        repeat(2) {
+            cache.get("docs_hybridSearch", request) { SearchResultCache.Result("partial ${calls.incrementAndGet()}", false) }
+        }
+        val complete =
+            cache.get("docs_hybridSearch", request) { SearchResultCache.Result("complete ${calls.incrementAndGet()}", true) }
+        val cached = cache.get("docs_hybridSearch", request) { SearchResultCache.Result("unexpected", true) }
+
+        // Then
+        assertEquals("complete 3", complete)
+        assertEquals(complete, cached)
+        assertEquals(3, calls.get())
+    }
+
+    @Test
+    fun `argument objects and tool input should share an entry`() {
+        // Given
+        val tool = CountingTool()
+        val cache = cache()
+        val first = cache.cached(tool).call("""{"query": "agents"}""")
+
+        // When
+        val second =
+            cache.get("docs_vectorSearch", mapOf("query" to " agents ")) { SearchResultCache.Result("unexpected", true) }
+
+        // Then
+        assertEquals(first, second)
+    }
+
+    @Test
+    fun `tools should be called outside the cache's lock`() {
+        // Given
+        val cache = cache()
+        val calls = AtomicInteger()
+        lateinit var cached: ToolCallback
+        val reentrant = object : ToolCallback {
+            override fun getToolDefinition(): ToolDefinition =
+                ToolDefinition.builder().name("docs_textSearch").description("test").inputSchema("{}").build()
+
+            // A computing load would fail on this recursive update of the same entry
+            override fun call(toolInput: String): String =
+                if (calls.incrementAndGet() == 1) "outer " + cached.call(toolInput) else "inner"
+        }
+        cached = cache.cached(reentrant)
+
+        // When
+        val result = cached.call("""{"query": "agents"}""")
+
+        // Then
+        assertEquals("outer inner", result)
+    }
+
+    @Test
+    fun `a zero size should disable caching`() {
+        // Given
+        val tool = CountingTool()
+
+        // When
+        val cached = cache(size = 0).cached(tool)
+
+        // Then
+        assertSame(tool, cached)
+    }
+
+    private fun cache(size: Int = 100) =
+        SearchResultCache(GuideProperties.Search(
+            20, 8, 60, size, Duration.ofMinutes(5), GuideProperties.Search.RerankerType.NONE, 30
+        ))
+}
+
+/**
+ * Tool returning a different result on each call, failing the first few
+ */
+private class CountingTool(private val failures: Int = 0) : ToolCallback {
+
+    val calls = AtomicInteger()
+
+    override fun getToolDefinition(): ToolDefinition =
+        ToolDefinition.builder().name("docs_vectorSearch").description("test").inputSchema("{}").build()
+
+    override fun call(toolInput: String): String {
+        val call = calls.incrementAndGet()
+        check(call > failures) { "failure" }
+        return "result $call"
+    }
+}
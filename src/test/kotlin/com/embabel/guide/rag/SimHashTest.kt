@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+class SimHashTest {
+
+    private val passage = """
+        Embabel agents are composed of actions, goals and conditions. The planner finds a sequence of
+        actions that achieves the goal, replanning after each action based on the state of the blackboard.
+        Actions are methods annotated with @Action, and goals are expressed with @AchievesGoal. Agents can
+        be written in Java or Kotlin and run on the JVM alongside existing Spring applications.
+        """.trimIndent()
+
+    @Test
+    fun `identical text should have identical signatures`() {
+        assertEquals(SimHash.of(passage), SimHash.of(passage))
+    }
+
+    @Test
+    fun `near-duplicate text should have close signatures`() {
+        val edited = passage
+            .replace("Embabel agents", "Embabel Agents")
+            .replace("existing Spring applications", "existing Spring Boot applications")
+
+        assertTrue(
+            SimHash.distance(SimHash.of(passage), SimHash.of(edited)) <= 10,
+            "distance was ${SimHash.distance(SimHash.of(passage), SimHash.of(edited))}"
+        )
+    }
+
+    @Test
+    fun `unrelated text should have distant signatures`() {
+        val other = """
+            To delete all data, open the Neo4j browser, log in with the configured password and run a query
+            that detaches and deletes every node. Then restart the application with content reloading enabled
+            so that references are ingested again from scratch, which may take several minutes.
+            """.trimIndent()
+
+        assertTrue(SimHash.distance(SimHash.of(passage), SimHash.of(other)) > 10)
+    }
+
+    @Test
+    fun `case and punctuation should not matter`() {
+        assertEquals(SimHash.of("Actions, goals; and conditions!"), SimHash.of("actions goals and conditions"))
+    }
+
+    @Test
+    fun `bands should partition the signature`() {
+        val signature = 0x1234_5678_9ABC_DEF0L
+        assertEquals(0xDEF0, SimHash.band(signature, 0))
+        assertEquals(0x9ABC, SimHash.band(signature, 1))
+        assertEquals(0x5678, SimHash.band(signature, 2))
+        assertEquals(0x1234, SimHash.band(signature, 3))
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2024-2025 Embabel Software, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.embabel.guide.rag
+
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class VectorStorageTest {
+
+    private val dimensions = 100
+
+    private val vector = Random(1).let { random -> normalized(FloatArray(dimensions) { random.nextFloat() - 0.5f }) }
+    private val query = Random(2).let { random -> normalized(FloatArray(dimensions) { random.nextFloat() - 0.5f }) }
+
+    @Test
+    fun `floats should be exact`() {
+        val storage = VectorStorage.floats(dimensions)
+        val node = storage.add(vector)
+        assertArrayEquals(vector, storage.vector(node))
+        assertEquals(dot(vector, query), storage.similarity(node, query), 1e-5f)
+    }
+
+    @Test
+    fun `mapped floats should be exact and delete their file on close`() {
+        // Given
+        val file = Files.createTempFile("vectors-", ".f32")
+        val storage = VectorStorage.mappedFloats(dimensions, file)
+
+        // When
+        val nodes = List(1500) { storage.add(vector) }
+
+        // Then
+        assertArrayEquals(vector, storage.vector(nodes.last()))
+        storage.close()
+        assertFalse(Files.exists(file))
+    }
+
+    @Test
+    fun `int8 should approximate similarity closely in a quarter of the space`() {
+        // Given
+        val floats = VectorStorage.floats(dimensions)
+        val int8 = VectorStorage.int8(dimensions)
+
+        // When
+        val node = int8.add(vector)
+        floats.add(vector)
+
+        // Then
+        assertEquals(dot(vector, query), int8.similarity(node, query), 0.01f)
+        assertTrue(int8.bytes() * 3 < floats.bytes())
+    }
+
+    @Test
+    fun `binary should keep signs and unit length`() {
+        // Given
+        val binary = VectorStorage.binary(dimensions)
+
+        // When
+        val decoded = binary.vector(binary.add(vector))
+
+        // Then
+        vector.indices.forEach { assertEquals(vector[it] > 0, decoded[it] > 0) }
+        assertEquals(1.0f, dot(decoded, decoded), 1e-4f)
+        assertTrue(binary.similarity(0, vector) > 0.5f)
+    }
+
+    @Test
+    fun `node numbers should follow insertion order across blocks`() {
+        // Given
+        val storage = VectorStorage.int8(dimensions)
+        val vectors = List(1030) { n -> normalized(FloatArray(dimensions) { if (it == n % dimensions) 1f else 0f }) }
+
+        // When
+        val nodes = vectors.map { storage.add(it) }
+
+        // Then
+        assertEquals((0 until 1030).toList(), nodes)
+        assertEquals(1030, storage.size())
+        assertEquals(1f, storage.similarity(1029, vectors[1029]), 0.01f)
+    }
+
+    private fun normalized(vector: FloatArray): FloatArray {
+        val norm = sqrt(dot(vector, vector))
+        return FloatArray(vector.size) { vector[it] / norm }
+    }
+
+    private fun dot(a: FloatArray, b: FloatArray): Float = a.indices.sumOf { (a[it] * b[it]).toDouble() }.toFloat()
+}